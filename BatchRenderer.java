@@ -0,0 +1,191 @@
+package javaprojectview;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import javaprojectview.graphics.TextImageCache;
+import javaprojectview.parser.ClassInfo;
+import javaprojectview.parser.ParseCache;
+import javaprojectview.parser.ParseSession;
+import javaprojectview.uml.DiagramBuildListener;
+import javaprojectview.uml.JavaClassDiagram;
+
+// Command line program that renders the class diagram of a set of source files
+// to an image file without showing any windows, so that it can run on machines
+// without a display. Prints how long each step took and how well the text
+// images were reused.
+public class BatchRenderer {
+
+    private static final String USAGE =
+            "Usage: BatchRenderer [options] <source file or directory>...\n"
+          + "Options:\n"
+          + "  --out <file>        Image file to write (default: diagram.<format>)\n"
+          + "  --font-size <size>  Font size of the class info panels (default: 12)\n"
+          + "  --format <format>   Image format: png or svg (default: png)\n"
+          + "  --cache <directory> Cache parsed files in this directory\n"
+          + "  --layout <layout>   Layout: packed, force or hierarchy (default: packed)\n"
+          + "  --seed <number>     Random seed of the force layout (default: 0)\n";
+
+    private final ArrayList<File> roots;
+    private File outputFile;
+    private float fontSize;
+    private String format;
+    private File cacheDirectory;
+    private String layout;
+    private long seed;
+
+    // Names and durations (in nanoseconds) of the steps that have finished.
+    private final ArrayList<String> phaseNames;
+    private final ArrayList<Long> phaseTimes;
+    // Name and start time of the step that is currently running.
+    private String currentPhase;
+    private long phaseStartTime;
+
+    private BatchRenderer() {
+        roots = new ArrayList<>();
+        outputFile = null;
+        fontSize = 12.0f;
+        format = "png";
+        cacheDirectory = null;
+        layout = "packed";
+        seed = 0L;
+        phaseNames = new ArrayList<>();
+        phaseTimes = new ArrayList<>();
+    }
+
+    // Read the command line arguments. Throws IllegalArgumentException if they
+    // are invalid.
+    private void parseArguments(String[] args) {
+        for (int i = 0; i < args.length; ++i) {
+            String arg = args[i];
+            if (arg.startsWith("--")) {
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Missing value for " + arg);
+                }
+                String value = args[++i];
+                switch (arg) {
+                    case "--out":
+                        outputFile = new File(value);
+                        break;
+                    case "--font-size":
+                        try {
+                            fontSize = Float.parseFloat(value);
+                        } catch (NumberFormatException ex) {
+                            throw new IllegalArgumentException("Invalid font size: " + value);
+                        }
+                        if (!(fontSize > 0.0f)) {
+                            throw new IllegalArgumentException("Invalid font size: " + value);
+                        }
+                        break;
+                    case "--format":
+                        format = value.toLowerCase();
+                        if (!format.equals("png") && !format.equals("svg")) {
+                            throw new IllegalArgumentException("Unsupported format: " + value);
+                        }
+                        break;
+                    case "--cache":
+                        cacheDirectory = new File(value);
+                        break;
+                    case "--layout":
+                        if (!value.equals("packed") && !value.equals("force") && !value.equals("hierarchy")) {
+                            throw new IllegalArgumentException("Unknown layout: " + value);
+                        }
+                        layout = value;
+                        break;
+                    case "--seed":
+                        try {
+                            seed = Long.parseLong(value);
+                        } catch (NumberFormatException ex) {
+                            throw new IllegalArgumentException("Invalid seed: " + value);
+                        }
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option: " + arg);
+                }
+            } else {
+                roots.add(new File(arg));
+            }
+        }
+        if (roots.isEmpty()) {
+            throw new IllegalArgumentException("No source files given");
+        }
+        if (outputFile == null) {
+            outputFile = new File("diagram." + format);
+        }
+    }
+
+    // Finish the current step (if any) and start timing the next one.
+    private void startPhase(String phase) {
+        long time = System.nanoTime();
+        if (currentPhase != null) {
+            phaseNames.add(currentPhase);
+            phaseTimes.add(time - phaseStartTime);
+        }
+        currentPhase = phase;
+        phaseStartTime = time;
+    }
+
+    // Parse the files, build the diagram and export it. Returns false if there
+    // was nothing to export.
+    private boolean render() throws IOException {
+        startPhase("parse");
+        ParseSession session = new ParseSession(cacheDirectory == null ? null : new ParseCache(cacheDirectory));
+        session.load(roots.toArray(new File[roots.size()]));
+        ClassInfo[] classes = session.getClasses();
+        System.out.println("Found " + classes.length + " classes in " + session.getReadFileCount() + " changed files ("
+                         + session.getParsedFileCount() + " parsed)");
+        JavaClassDiagram diagram = new JavaClassDiagram(classes, fontSize, (String phase) -> {
+            startPhase(phase);
+        });
+        if (layout.equals("force")) {
+            startPhase("force layout");
+            diagram.autoSortForceDirected(seed);
+        } else if (layout.equals("hierarchy")) {
+            startPhase("hierarchy layout");
+            diagram.autoSortHierarchy();
+        }
+        startPhase("export");
+        boolean exported = format.equals("svg") ? diagram.exportSvg(outputFile) : diagram.exportPng(outputFile);
+        startPhase(null);
+        return exported;
+    }
+
+    // Print how long each step took.
+    private void printTimings(PrintStream out) {
+        long total = 0;
+        for (int i = 0; i < phaseNames.size(); ++i) {
+            long time = phaseTimes.get(i);
+            out.printf("%-14s %8d ms%n", phaseNames.get(i), time / 1000000);
+            total += time;
+        }
+        out.printf("%-14s %8d ms%n", "total", total / 1000000);
+        TextImageCache cache = TextImageCache.getInstance();
+        out.println("Text part images: " + cache.getPartTier());
+        out.println("Text line images: " + cache.getLineTier());
+    }
+
+    public static void main(String[] args) {
+        // Must be set before any AWT classes are used.
+        System.setProperty("java.awt.headless", "true");
+        BatchRenderer renderer = new BatchRenderer();
+        try {
+            renderer.parseArguments(args);
+        } catch (IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            System.err.print(USAGE);
+            System.exit(2);
+        }
+        try {
+            if (!renderer.render()) {
+                System.err.println("Cannot export empty diagram.");
+                System.exit(1);
+            }
+        } catch (IOException ex) {
+            System.err.println("Error: " + ex.getMessage());
+            System.exit(1);
+        }
+        renderer.printTimings(System.out);
+        System.out.println("Wrote " + renderer.outputFile);
+    }
+}
@@ -1,6 +1,7 @@
 package javaprojectview.parser;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -11,6 +12,7 @@ public class ClassBuilder {
 
     private final JavaParser parser;
     private final HashMap<String, String> imports;
+    private final ArrayList<String> wildcardImports;
     private final String packagePath;
     private final String name;
     private final String type;
@@ -28,6 +30,7 @@ public class ClassBuilder {
     public ClassBuilder(JavaParser parser, String path, String type) {
         this.parser = parser;
         imports = new HashMap<>();
+        wildcardImports = new ArrayList<>();
         int dotIndex = path.lastIndexOf('.');
         packagePath = dotIndex == -1 ? "" : path.substring(0, dotIndex);
         name = path.substring(dotIndex + 1);
@@ -62,6 +65,12 @@ public class ClassBuilder {
         imports.putAll(map);
     }
     
+    // Add the names of packages (or classes) whose classes can all be used by
+    // their short name, because of imports like "import java.util.*;".
+    public void addWildcardImports(Collection<String> packageNames) {
+        wildcardImports.addAll(packageNames);
+    }
+    
     // Add the name of an interface that this class implements
     public void addInterfaceName(String interfaceName) {
         interfaceNames.add(interfaceName);
@@ -80,7 +89,7 @@ public class ClassBuilder {
     // Generate a ClassInfo object based on this builder.
     public ClassInfo toClassInfo() {
         return new ClassInfo(
-                parser, imports, packagePath, name, type,
+                parser, imports, wildcardImports.toArray(new String[wildcardImports.size()]), packagePath, name, type,
                 superClassName, outerClassName, interfaceNames.toArray(new String[interfaceNames.size()]),
                 fields.toArray(new FieldInfo[fields.size()]),
                 methods.toArray(new MethodInfo[methods.size()]));
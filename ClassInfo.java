@@ -4,6 +4,7 @@ import java.awt.Font;
 import java.io.BufferedWriter;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import javaprojectview.graphics.SmartText;
@@ -11,8 +12,13 @@ import javaprojectview.graphics.SmartText;
 // This class contains information about a parsed class.
 public class ClassInfo {
     
+    // Shared marker for types that were looked up but not found, so that they
+    // don't have to be looked up again.
+    static final ClassInfo UNRESOLVED = new ClassInfo(null, new HashMap<>(), new String[0], "", "<unresolved>", null, null, null, new String[0], new FieldInfo[0], new MethodInfo[0]);
+    
     private final JavaParser parser;
     private final HashMap<String, String> imports;
+    private final String[] wildcardImports;
     private final String packagePath;
     private final String name;
     private final String type;
@@ -22,10 +28,18 @@ public class ClassInfo {
     private final FieldInfo[] fields;
     private final MethodInfo[] methods;
     
+    // Classes that the names refer to. These are filled in by the parser's
+    // resolution pass (see JavaParser.resolveTypes), and are UNRESOLVED if the
+    // class wasn't found.
+    private ClassInfo superClass;
+    private ClassInfo outerClass;
+    private ClassInfo[] interfaces;
+    
     // Create the object.
-    public ClassInfo(JavaParser parser, HashMap<String, String> imports, String packagePath, String name, String type, String superClassName, String outerClassName, String[] interfaceNames, FieldInfo[] fields, MethodInfo[] methods) {
+    public ClassInfo(JavaParser parser, HashMap<String, String> imports, String[] wildcardImports, String packagePath, String name, String type, String superClassName, String outerClassName, String[] interfaceNames, FieldInfo[] fields, MethodInfo[] methods) {
         this.parser = parser;
         this.imports = imports;
+        this.wildcardImports = wildcardImports;
         this.packagePath = packagePath;
         this.name = name;
         this.type = type;
@@ -36,18 +50,76 @@ public class ClassInfo {
         this.methods = methods;
     }
     
+    // Return the information about the class that a type name refers to when
+    // it is used inside this class, if that class was parsed by the same
+    // parser. Return null otherwise.
     public ClassInfo resolveClass(String shortName) {
-        ClassInfo scope = this;
-        ClassInfo classFound = null;
-        do {
+        parser.ensureTypesResolved();
+        ClassInfo classFound = findClass(shortName);
+        return classFound == UNRESOLVED ? null : classFound;
+    }
+    
+    // Look up a type name in the scopes of this class, from the inside out:
+    // imports (which include the classes nested in this class) or the classes
+    // next to this class, then the same for every outer class, and finally the
+    // wildcard imports. Only uses the tables of the parser, so no strings are
+    // created. Returns UNRESOLVED if the class wasn't found.
+    private ClassInfo findClass(String shortName) {
+        if (shortName == null) {
+            return UNRESOLVED;
+        }
+        for (ClassInfo scope = this; scope != null && scope != UNRESOLVED; scope = scope.outerClass) {
             String fullName = scope.imports.get(shortName);
+            ClassInfo classFound;
             if (fullName == null) {
-                classFound = parser.getClassInfo(scope.packagePath + "." + shortName);
+                classFound = parser.getScopeMember(scope.packagePath, shortName);
             } else {
                 classFound = parser.getClassInfo(fullName);
             }
-        } while (classFound == null && (scope = scope.getOuterClass()) != null);
-        return classFound;
+            if (classFound != null) {
+                return classFound;
+            }
+        }
+        for (String packageName : wildcardImports) {
+            ClassInfo classFound = parser.getScopeMember(packageName, shortName);
+            if (classFound != null) {
+                return classFound;
+            }
+        }
+        return UNRESOLVED;
+    }
+    
+    // Look up the outer class. Must be done for all classes before resolveTypes
+    // is called, since resolving names goes through the outer classes.
+    void resolveOuterClass() {
+        ClassInfo classFound = parser.getClassInfo(packagePath);
+        outerClass = classFound == null ? UNRESOLVED : classFound;
+    }
+    
+    // Look up the classes that the names in this class refer to, and store
+    // them in this class and its members.
+    void resolveTypes() {
+        superClass = findClass(superClassName);
+        ArrayList<ClassInfo> interfacesFound = new ArrayList<>();
+        for (String interfaceName : interfaceNames) {
+            ClassInfo interfaceInfo = findClass(interfaceName);
+            // Only keep the ones that were found.
+            if (interfaceInfo != UNRESOLVED)
+                interfacesFound.add(interfaceInfo);
+        }
+        interfaces = interfacesFound.toArray(new ClassInfo[interfacesFound.size()]);
+        for (FieldInfo field : fields) {
+            field.setResolvedType(findClass(field.getTypeName()));
+        }
+        for (MethodInfo method : methods) {
+            method.setResolvedType(findClass(method.getTypeName()));
+            for (ParameterInfo parameter : method.getParameters()) {
+                parameter.setResolvedType(findClass(parameter.getTypeName()));
+            }
+            for (ValueInfo variable : method.getVariables()) {
+                variable.setResolvedType(findClass(variable.getTypeName()));
+            }
+        }
     }
     
     // Return the class name.
@@ -70,6 +142,39 @@ public class ClassInfo {
         return methods;
     }
     
+    // Return the name of the package or outer class that this class is in.
+    String getPackagePath() {
+        return packagePath;
+    }
+    
+    // Return the imports that are used to resolve type names in this class.
+    HashMap<String, String> getImports() {
+        return imports;
+    }
+    
+    // Return the packages that were imported using a wildcard.
+    String[] getWildcardImports() {
+        return wildcardImports;
+    }
+    
+    // Return the name of the class that this class extends, as written in the
+    // source code, or null if there isn't one.
+    String getSuperClassName() {
+        return superClassName;
+    }
+    
+    // Return the name of the class that this class was defined in, or null if
+    // it isn't an inner class.
+    String getOuterClassName() {
+        return outerClassName;
+    }
+    
+    // Return the names of the interfaces that this class implements, as written
+    // in the source code.
+    String[] getInterfaceNames() {
+        return interfaceNames;
+    }
+    
     // Return the full name of the class, including package name.
     public String getFullName() {
         return packagePath + "." + getName();
@@ -91,28 +196,23 @@ public class ClassInfo {
     // Return the information about the class that this class extends, if such a
     // class exists and it was parsed by the same parser. Return null otherwise.
     public ClassInfo getSuperClass() {
-        return resolveClass(superClassName);
+        parser.ensureTypesResolved();
+        return superClass == UNRESOLVED ? null : superClass;
     }
     
     // Return the information about the class that this class was defined in, if
     // such a class exists and it was parsed by the same parser. Return null
     // otherwise.
     public ClassInfo getOuterClass() {
-        return parser.getClassInfo(packagePath);
+        parser.ensureTypesResolved();
+        return outerClass == UNRESOLVED ? null : outerClass;
     }
     
     // Return the information about the interfaces that this class implements,
     // if they have been parsed by the same parser.
     public Collection<ClassInfo> getInterfaces() {
-        ArrayList<ClassInfo> interfaces = new ArrayList<>();
-        for (String interfaceName : interfaceNames) {
-            // Resolve interfaces using their name.
-            ClassInfo interfaceInfo = resolveClass(interfaceName);
-            // Only add the ones that were found.
-            if (interfaceInfo != null)
-                interfaces.add(interfaceInfo);
-        }
-        return interfaces;
+        parser.ensureTypesResolved();
+        return interfaces == null ? new ArrayList<>() : Arrays.asList(interfaces);
     }
     
     // Write the information about the class to a BufferedWriter.
@@ -0,0 +1,138 @@
+package javaprojectview.parser;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+// Listener that builds ClassInfo objects out of the declarations found by the
+// parser, using a ClassBuilder for every class.
+class ClassInfoCollector implements ParseListener {
+
+    // Parser that the classes will belong to.
+    private final JavaParser parser;
+    // Finished classes, in the order they were completed.
+    private final ArrayList<ClassInfo> classes;
+    // Builders of the classes and methods that the parser is currently in. The
+    // builder of a method is used to collect its variables as fields.
+    private final ArrayList<ClassBuilder> builders;
+    // Information about the methods that the parser is currently in.
+    private final ArrayList<MethodHeader> methods;
+    // Imports that apply at the current position: the imports of the file and
+    // the names of the classes that the parser is currently in.
+    private HashMap<String, String> imports;
+    // Imports that applied outside of the classes that the parser is in.
+    private final ArrayList<HashMap<String, String>> outerImports;
+    // Packages imported using a wildcard.
+    private final ArrayList<String> wildcardImports;
+
+    // Create the object.
+    ClassInfoCollector(JavaParser parser) {
+        this.parser = parser;
+        classes = new ArrayList<>();
+        builders = new ArrayList<>();
+        methods = new ArrayList<>();
+        imports = new HashMap<>();
+        outerImports = new ArrayList<>();
+        wildcardImports = new ArrayList<>();
+    }
+
+    // Return the classes that were completed.
+    ClassInfo[] getClasses() {
+        return classes.toArray(new ClassInfo[classes.size()]);
+    }
+
+    @Override
+    public void importClass(String shortName, String fullName) {
+        imports.put(shortName, fullName);
+    }
+
+    @Override
+    public void importPackage(String packageName) {
+        wildcardImports.add(packageName);
+    }
+
+    @Override
+    public void startClass(String name, String fullName, String type, String superClassName, String[] interfaceNames) {
+        ClassBuilder outerClass = builders.isEmpty() ? null : builders.get(builders.size() - 1);
+        // Make imports for this class separate from the imports for the outer class
+        // (this is convenient because inner class resolution is dealt with by
+        // treating the definition as an "import").
+        outerImports.add(imports);
+        imports = new HashMap<>(imports);
+        imports.put(name, fullName);
+        ClassBuilder builder = new ClassBuilder(parser, fullName, type);
+        builder.addImports(imports);
+        builder.addWildcardImports(wildcardImports);
+        // If this is an inner class, then add a relation for that.
+        if (outerClass != null) {
+            builder.setOuterClassName(outerClass.getName());
+            outerClass.addImport(name, fullName);
+            builder.addImports(outerClass);
+        }
+        if (superClassName != null) {
+            builder.setSuperClassName(superClassName);
+        }
+        for (String interfaceName : interfaceNames) {
+            builder.addInterfaceName(interfaceName);
+        }
+        builders.add(builder);
+    }
+
+    @Override
+    public void endClass() {
+        // Finish building the class and return to the outer class, if any.
+        classes.add(builders.remove(builders.size() - 1).toClassInfo());
+        imports = outerImports.remove(outerImports.size() - 1);
+    }
+
+    @Override
+    public void field(Accessibility accessibility, String name, String typeName, boolean isFinal, boolean isStatic) {
+        builders.get(builders.size() - 1).addField(accessibility, name, typeName, isFinal, isStatic);
+    }
+
+    @Override
+    public void startMethod(Accessibility accessibility, String name, String returnTypeName, boolean isFinal, boolean isStatic) {
+        ClassBuilder outerClass = builders.get(builders.size() - 1);
+        methods.add(new MethodHeader(accessibility, name, returnTypeName, isFinal, isStatic));
+        // Collect the variables of the method as the fields of a separate builder.
+        ClassBuilder variableBuilder = new ClassBuilder(parser, "<variable search>", null);
+        variableBuilder.addImports(outerClass);
+        builders.add(variableBuilder);
+    }
+
+    @Override
+    public void parameter(String name, String typeName, boolean isFinal) {
+        methods.get(methods.size() - 1).parameters.add(new ParameterInfo(name, typeName, isFinal));
+    }
+
+    @Override
+    public void localVariable(String name, String typeName, boolean isFinal) {
+        builders.get(builders.size() - 1).addField(Accessibility.PACKAGE, name, typeName, isFinal, false);
+    }
+
+    @Override
+    public void endMethod() {
+        ValueInfo[] variables = builders.remove(builders.size() - 1).getFieldsAsVariables();
+        MethodHeader method = methods.remove(methods.size() - 1);
+        builders.get(builders.size() - 1).addMethod(method.accessibility, method.name, method.returnTypeName, method.parameters, variables, method.isFinal, method.isStatic);
+    }
+
+    // Information about a method that is only complete once its end is found.
+    private static class MethodHeader {
+
+        private final Accessibility accessibility;
+        private final String name;
+        private final String returnTypeName;
+        private final boolean isFinal;
+        private final boolean isStatic;
+        private final ArrayList<ParameterInfo> parameters;
+
+        MethodHeader(Accessibility accessibility, String name, String returnTypeName, boolean isFinal, boolean isStatic) {
+            this.accessibility = accessibility;
+            this.name = name;
+            this.returnTypeName = returnTypeName;
+            this.isFinal = isFinal;
+            this.isStatic = isStatic;
+            parameters = new ArrayList<>();
+        }
+    }
+}
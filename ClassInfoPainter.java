@@ -1,15 +1,33 @@
 package javaprojectview.graphics;
 
-import java.awt.Graphics;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
 import java.awt.Image;
+import java.awt.Shape;
 import java.awt.image.BufferedImage;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import javaprojectview.Settings;
+import javaprojectview.Theme;
 import javaprojectview.parser.FieldInfo;
 import javaprojectview.parser.MethodInfo;
 
 public class ClassInfoPainter implements TextImagePainter {
     
+    // How much of a panel is painted. When the diagram is zoomed out far, the
+    // member texts (and then the title) are too small to read, so painting
+    // them would be a waste of time.
+    public enum Detail {
+        // Only the background and the border, without any text.
+        BOX,
+        // The background, the border and the title.
+        TITLE,
+        // Everything.
+        FULL
+    }
+    
     private static final float BASE_TITLE_FONT_SIZE = 13.0f;
     private static final float BASE_TITLE_MARGIN_PIXELS = 5.0f;
     private static final float BASE_BORDER_PIXELS = 3.0f;
@@ -20,91 +38,175 @@ public class ClassInfoPainter implements TextImagePainter {
     private final SmartText title;
     private final ArrayList<SmartText> fieldTexts;
     private final ArrayList<SmartText> methodTexts;
+    // Sizes of the panel at the font sizes that it was measured at, in the
+    // theme that they were measured in, so zooming out and in again doesn't
+    // measure all the texts again.
+    private final HashMap<Float, Dimension> sizes;
+    private Theme sizesTheme;
     
     public ClassInfoPainter(SmartText title) {
         this.title = title;
         fieldTexts = new ArrayList<>();
         methodTexts = new ArrayList<>();
+        sizes = new HashMap<>();
     }
     
-    public void add(FieldInfo fieldInfo) {
+    public synchronized void add(FieldInfo fieldInfo) {
         fieldTexts.add(fieldInfo.toSmartText());
+        sizes.clear();
     }
     
-    public void add(MethodInfo methodInfo) {
+    public synchronized void add(MethodInfo methodInfo) {
         methodTexts.add(methodInfo.toSmartText());
+        sizes.clear();
     }
     
-    // Create an image based on the information about this class. This image may be
-    // used in a class diagram.
-    @Override
-    public Image paintImage(float fontSize) {
+    // Return the size of the panel at the given font size, without painting
+    // anything. The size is the same for every level of detail.
+    public synchronized Dimension getSize(float fontSize) {
+        Theme theme = Settings.getInstance().getTheme();
+        if (theme != sizesTheme) {
+            sizes.clear();
+            sizesTheme = theme;
+        }
+        Dimension size = sizes.get(fontSize);
+        if (size == null) {
+            PanelLayout layout = new PanelLayout(fontSize);
+            size = new Dimension(layout.width, layout.height);
+            sizes.put(fontSize, size);
+        }
+        return new Dimension(size);
+    }
+    
+    // Paint a panel of the given size as a plain box with a border, at the
+    // level of detail BOX. This doesn't need the texts of the panel, so
+    // diagrams can paint it directly instead of painting an image first.
+    public static void paintBox(Graphics2D graphics, float fontSize, int x, int y, int width, int height) {
+        if (width <= 0 || height <= 0) {
+            return;
+        }
         Settings settings = Settings.getInstance();
         float zoomRatio = fontSize / settings.getBaseFontSize();
+        int borderPixels = Math.max((int) (zoomRatio * BASE_BORDER_PIXELS + 0.5), 1);
+        graphics.setColor(settings.getColor("info-border"));
+        graphics.fillRect(x, y, width, height);
+        if (width > borderPixels * 2 && height > borderPixels * 2) {
+            graphics.setColor(settings.getColor("info-background"));
+            graphics.fillRect(x + borderPixels, y + borderPixels, width - borderPixels * 2, height - borderPixels * 2);
+        }
+    }
+    
+    // Paint the panel directly onto a graphics object, with the top left corner
+    // at (x, y). Nothing is painted outside of the panel. The texts are painted
+    // as text rather than as cached images, so they stay sharp when the
+    // graphics object is scaled.
+    public void paint(Graphics2D graphics, float fontSize, int x, int y) {
+        PanelLayout layout = new PanelLayout(fontSize);
+        if (layout.width != 0) {
+            paint(graphics, layout, x, y, Detail.FULL, false);
+        }
+    }
+    
+    // Write the panel to an SVG image, with the top left corner at (x, y). The
+    // shapes are the same as the ones that paint draws, but the texts are
+    // written as text instead of images.
+    public void writeSvg(SvgWriter svg, float fontSize, int x, int y) throws IOException {
+        PanelLayout layout = new PanelLayout(fontSize);
+        if (layout.width == 0) {
+            return;
+        }
+        Settings settings = Settings.getInstance();
+        int width = layout.width;
+        int height = layout.height;
+        int borderPixels = layout.borderPixels;
+        int titleSpace = layout.titleSpace;
+        int titleMargin = layout.titleMargin;
+        // Draw background.
+        int halfBorderThickness = borderPixels / 2;
+        svg.fillRect(x + halfBorderThickness, y + halfBorderThickness + titleSpace, width - halfBorderThickness, height - halfBorderThickness - titleSpace, settings.getColor("info-background"));
+        // Draw title.
+        int titleX = (width - layout.titleWidth) / 2;
+        title.writeSvg(svg, layout.titleFontSize, x + titleX, y - 1);
+        // Draw border.
+        Color borderColor = settings.getColor("info-border");
+        svg.fillRect(x, y + titleSpace, titleX - titleMargin, borderPixels, borderColor); // left part of top border
+        svg.fillRect(x + width - titleX + titleMargin, y + titleSpace, titleX - titleMargin, borderPixels, borderColor); // right part of top border
+        svg.fillRect(x, y + titleSpace, borderPixels, height - titleSpace, borderColor); // left border
+        svg.fillRect(x + width - borderPixels, y + titleSpace, borderPixels, height - titleSpace, borderColor); // right border
+        svg.fillRect(x, y + height - borderPixels, width, borderPixels, borderColor); // bottom border
+        int lineY = y + layout.sidePadding + titleSpace;
         int numFields = fieldTexts.size();
-        int numMethods = methodTexts.size();
-        boolean useSeparator = numFields != 0 && numMethods != 0;
-        Image titleImage = title.paintImage(Math.max(Math.round(zoomRatio * BASE_TITLE_FONT_SIZE), fontSize + 1.0f));
-        int titleWidth = titleImage.getWidth(null);
-        int titleHeight = titleImage.getHeight(null);
-        int titleMargin = (int) (zoomRatio * BASE_TITLE_MARGIN_PIXELS + 0.5f);
-        Image[] images = new Image[numFields + numMethods + (useSeparator ? 1 : 0)];
-        int imageIndex = 0;
-        int width = titleWidth + 2 * titleMargin;
-        int height = 0;
-        int separatorHeight = 0;
-        for (int listIndex = 0; listIndex < 2; ++listIndex) {
-            // Use the field texts in the first iteration, and the method texts in the second iteration.
-            ArrayList<SmartText> memberTexts = listIndex == 0 ? fieldTexts : methodTexts;
-            // Prepare the images for the field/method texts and measure them.
-            for (SmartText text : memberTexts) {
-                Image image = text.paintImage(fontSize);
-                images[imageIndex++] = image;
-                int textWidth = image.getWidth(null);
-                int textHeight = image.getHeight(null);
-                if (textWidth > width) {
-                    // Store the widest text's width.
-                    width = textWidth;
-                }
-                // Add all heights together to get the total height.
-                height += textHeight;
-            }
-            // If a separator needs to be drawn, then put it right after the fields and before the methods.
-            if (useSeparator && listIndex == 0) {
-                // Use null as a placeholder for the separator.
-                images[imageIndex++] = null;
-                // Calculate the height of the separator (including empty space) and add it to the total height.
-                // Must be at least 1 pixel, so use Math.max.
-                separatorHeight = Math.max((int) (zoomRatio * BASE_SEPARATOR_HEIGHT + 0.5), 1);
-                height += separatorHeight;
+        for (int i = 0, numLines = layout.lineHeights.length; i < numLines; ++i) {
+            if (i == numFields && layout.separatorHeight > 0) {
+                // Draw a separator between the fields and the methods.
+                int separatorThickness = Math.max((int) (layout.zoomRatio * BASE_SEPARATOR_THICKNESS + 0.5), 1);
+                svg.fillRect(x + layout.sidePadding, lineY + (int) ((layout.separatorHeight - separatorThickness) * 0.5f), layout.separatorWidth, separatorThickness, settings.getColor("separator"));
+                lineY += layout.separatorHeight;
             }
+            SmartText text = i < numFields ? fieldTexts.get(i) : methodTexts.get(i - numFields);
+            text.writeSvg(svg, layout.fontSize, x + layout.sidePadding, lineY);
+            lineY += layout.lineHeights[i];
         }
-        if (width == 0 || height == 0) {
+    }
+    
+    // Create an image based on the information about this class. This image may be
+    // used in a class diagram. The texts are taken from the TextImageCache, so
+    // lines that appear in other classes or at earlier zoom levels are not
+    // painted again.
+    @Override
+    public Image paintImage(float fontSize) {
+        return paintImage(fontSize, Detail.FULL);
+    }
+    
+    // Create an image of the panel with only the given level of detail. The
+    // image has the same size at every level of detail.
+    public Image paintImage(float fontSize, Detail detail) {
+        Settings settings = Settings.getInstance();
+        PanelLayout layout = new PanelLayout(fontSize);
+        if (layout.width == 0) {
             return settings.getEmptyImage();
         }
-        int separatorWidth = width;
-        // Compute the border thickness and margin for this zoomRatio.
-        int borderPixels = Math.max((int) (zoomRatio * BASE_BORDER_PIXELS + 0.5), 1);
-        int marginPixels = (int) (zoomRatio * BASE_MARGIN_PIXELS + 0.5);
-        int sidePadding = borderPixels + marginPixels;
-        // Add the width of the border and the margin to the width and height twice, since it's on the left and
-        // right side, and on the top and bottom sides.
-        width += sidePadding * 2;
-        height += sidePadding * 2;
-        // Compute how many pixels of the title (class name) stick out at the top and add them to the height.
-        int titleSpace = Math.max((titleHeight - borderPixels) / 2, 0);
-        height += titleSpace;
         // Create image for this panel.
-        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
-        Graphics graphics = image.getGraphics();
+        BufferedImage image = new BufferedImage(layout.width, layout.height, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D graphics = (Graphics2D) image.getGraphics();
         settings.applyDesktopHints(graphics);
+        paint(graphics, layout, 0, 0, detail, true);
+        // Finish drawing the image.
+        graphics.dispose();
+        image.flush();
+        return image;
+    }
+    
+    // Paint the panel using sizes that were already measured. If
+    // 'useCachedTexts' is true, the texts are drawn from the images in the
+    // TextImageCache instead of being painted.
+    private void paint(Graphics2D graphics, PanelLayout layout, int x, int y, Detail detail, boolean useCachedTexts) {
+        if (detail == Detail.BOX) {
+            paintBox(graphics, layout.fontSize, x, y, layout.width, layout.height);
+            return;
+        }
+        Settings settings = Settings.getInstance();
+        int width = layout.width;
+        int height = layout.height;
+        int borderPixels = layout.borderPixels;
+        int titleSpace = layout.titleSpace;
+        int titleMargin = layout.titleMargin;
+        // Draw relative to the top left corner of the panel, and keep the title
+        // (which is drawn slightly above the panel) inside the panel.
+        Shape oldClip = graphics.getClip();
+        graphics.translate(x, y);
+        graphics.clipRect(0, 0, width, height);
         // Draw brackground.
         graphics.setColor(settings.getColor("info-background"));
         int halfBorderThickness = borderPixels / 2;
         graphics.fillRect(halfBorderThickness, halfBorderThickness + titleSpace, width - halfBorderThickness, height - halfBorderThickness - titleSpace);
         // Draw title.
-        int titleX = (width - titleWidth) / 2;
-        graphics.drawImage(titleImage, titleX, -1, null);
+        int titleX = (width - layout.titleWidth) / 2;
+        if (useCachedTexts) {
+            graphics.drawImage(title.getImage(layout.titleFontSize), titleX, -1, null);
+        } else {
+            title.paint(graphics, layout.titleFontSize, titleX, -1);
+        }
         // Draw border.
         graphics.setColor(settings.getColor("info-border"));
         graphics.fillRect(0, titleSpace, titleX - titleMargin, borderPixels); // left part of top border
@@ -112,24 +214,105 @@ public class ClassInfoPainter implements TextImagePainter {
         graphics.fillRect(0, titleSpace, borderPixels, height - titleSpace); // left border
         graphics.fillRect(width - borderPixels, titleSpace, borderPixels, height - titleSpace); // right border
         graphics.fillRect(0, height - borderPixels, width, borderPixels); // bottom border
-        int y = sidePadding + titleSpace;
-        for (Image partImage : images) {
-            if (partImage != null) {
-                // If the image for the current line of text isn't null, then draw it.
-                graphics.drawImage(partImage, sidePadding, y, null);
-                y += partImage.getHeight(null);
-            } else {
-                // Otherwise, draw a separator instead.
+        int lineY = layout.sidePadding + titleSpace;
+        int numFields = fieldTexts.size();
+        // Without full detail, the space for the texts is left empty.
+        int numLines = detail == Detail.FULL ? layout.lineHeights.length : 0;
+        for (int i = 0; i < numLines; ++i) {
+            if (i == numFields && layout.separatorHeight > 0) {
+                // Draw a separator between the fields and the methods.
                 graphics.setColor(settings.getColor("separator"));
                 // Calculate the thickness of the separator (at least 1).
-                int separatorThickness = Math.max((int) (zoomRatio * BASE_SEPARATOR_THICKNESS + 0.5), 1);
-                graphics.fillRect(sidePadding, y + (int) ((separatorHeight - separatorThickness) * 0.5f), separatorWidth, separatorThickness);
-                y += separatorHeight;
+                int separatorThickness = Math.max((int) (layout.zoomRatio * BASE_SEPARATOR_THICKNESS + 0.5), 1);
+                graphics.fillRect(layout.sidePadding, lineY + (int) ((layout.separatorHeight - separatorThickness) * 0.5f), layout.separatorWidth, separatorThickness);
+                lineY += layout.separatorHeight;
+            }
+            // Draw the text for the current line.
+            SmartText text = i < numFields ? fieldTexts.get(i) : methodTexts.get(i - numFields);
+            if (useCachedTexts) {
+                graphics.drawImage(text.getImage(layout.fontSize), layout.sidePadding, lineY, null);
+            } else {
+                text.paint(graphics, layout.fontSize, layout.sidePadding, lineY);
+            }
+            lineY += layout.lineHeights[i];
+        }
+        graphics.translate(-x, -y);
+        graphics.setClip(oldClip);
+    }
+    
+    // Sizes and positions of the parts of the panel at a specific font size.
+    // The width and height are 0 if the panel is empty.
+    private class PanelLayout {
+        
+        private final float fontSize;
+        private final float zoomRatio;
+        private final float titleFontSize;
+        private final int titleWidth;
+        private final int titleMargin;
+        // Heights of the field texts followed by the method texts.
+        private final int[] lineHeights;
+        // Height of the separator between the fields and the methods, or 0 if
+        // there is no separator.
+        private final int separatorHeight;
+        private final int separatorWidth;
+        private final int borderPixels;
+        private final int sidePadding;
+        private final int titleSpace;
+        private final int width;
+        private final int height;
+        
+        PanelLayout(float fontSize) {
+            Settings settings = Settings.getInstance();
+            this.fontSize = fontSize;
+            zoomRatio = fontSize / settings.getBaseFontSize();
+            int numFields = fieldTexts.size();
+            int numMethods = methodTexts.size();
+            boolean useSeparator = numFields != 0 && numMethods != 0;
+            titleFontSize = Math.max(Math.round(zoomRatio * BASE_TITLE_FONT_SIZE), fontSize + 1.0f);
+            Dimension titleSize = title.getSize(titleFontSize);
+            titleWidth = titleSize.width;
+            titleMargin = (int) (zoomRatio * BASE_TITLE_MARGIN_PIXELS + 0.5f);
+            lineHeights = new int[numFields + numMethods];
+            int contentWidth = titleWidth + 2 * titleMargin;
+            int contentHeight = 0;
+            for (int i = 0; i < lineHeights.length; ++i) {
+                // Measure the field/method texts.
+                SmartText text = i < numFields ? fieldTexts.get(i) : methodTexts.get(i - numFields);
+                Dimension textSize = text.getSize(fontSize);
+                if (textSize.width > contentWidth) {
+                    // Store the widest text's width.
+                    contentWidth = textSize.width;
+                }
+                // Add all heights together to get the total height.
+                lineHeights[i] = textSize.height;
+                contentHeight += textSize.height;
+            }
+            // If a separator needs to be drawn, then put it right after the fields and before the methods.
+            if (useSeparator) {
+                // Calculate the height of the separator (including empty space) and add it to the total height.
+                // Must be at least 1 pixel, so use Math.max.
+                separatorHeight = Math.max((int) (zoomRatio * BASE_SEPARATOR_HEIGHT + 0.5), 1);
+                contentHeight += separatorHeight;
+            } else {
+                separatorHeight = 0;
+            }
+            separatorWidth = contentWidth;
+            // Compute the border thickness and margin for this zoomRatio.
+            borderPixels = Math.max((int) (zoomRatio * BASE_BORDER_PIXELS + 0.5), 1);
+            int marginPixels = (int) (zoomRatio * BASE_MARGIN_PIXELS + 0.5);
+            sidePadding = borderPixels + marginPixels;
+            // Compute how many pixels of the title (class name) stick out at the top.
+            titleSpace = Math.max((titleSize.height - borderPixels) / 2, 0);
+            if (contentWidth == 0 || contentHeight == 0) {
+                width = 0;
+                height = 0;
+            } else {
+                // Add the width of the border and the margin to the width and height twice, since it's on
+                // the left and right side, and on the top and bottom sides. Also add the pixels of the
+                // title that stick out at the top to the height.
+                width = contentWidth + sidePadding * 2;
+                height = contentHeight + sidePadding * 2 + titleSpace;
             }
         }
-        // Finish drawing the image.
-        graphics.dispose();
-        image.flush();
-        return image;
     }
 }
@@ -0,0 +1,22 @@
+package javaprojectview.uml;
+
+// Receives a notification whenever a class diagram starts a new step while it
+// is being built, so that the steps can be timed or shown as progress.
+public interface DiagramBuildListener {
+
+    // Finding the relations between the classes.
+    public static final String RELATIONS = "relations";
+    // Painting the images of the class info panels.
+    public static final String RASTERIZATION = "rasterization";
+    // Positioning the class info panels.
+    public static final String LAYOUT = "layout";
+
+    // Called when a step starts. The previous step (if any) has finished.
+    public void phaseStarted(String phase);
+
+    // Return true to stop building the diagram. This is checked between the
+    // steps, and the diagram then throws CancellationException.
+    public default boolean isCancelled() {
+        return false;
+    }
+}
@@ -0,0 +1,238 @@
+package javaprojectview.uml;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import javaprojectview.graphics.PositionedImage;
+
+// Places the panels of a diagram so that they don't overlap, and so that panels
+// with relations between them end up close to each other. The panels are
+// placed one at a time, in the order in which they are reached when walking
+// over the relations (so that a panel is placed right after a panel it is
+// connected to). Every panel is put against a side of a panel that was placed
+// before, as close as possible to the panels it is connected to. Grids are used
+// to find the panels near that spot and to check for overlaps, so the time it
+// takes grows about as fast as the number of panels. The result only depends
+// on the sizes of the panels and the relations between them.
+public class DiagramLayout {
+
+    // Size of the cells of the grids, compared to the average panel size.
+    private static final float CELL_SIZE_RATIO = 2.0f;
+
+    private final PositionedImage[] images;
+    private final int[][] neighbors;
+    private final int spacing;
+    // Positions of the centers of the panels to aim for, or null to aim for
+    // the panels they're connected to.
+    private Point[] targets;
+
+    // Area taken by each panel that was placed: the panel itself and the
+    // spacing to the right of and below it.
+    private final Rectangle[] areas;
+    // All the placed panels.
+    private SpatialGrid placedGrid;
+    // Placed panels that may still have room next to them.
+    private SpatialGrid openGrid;
+    // Area that contains all the placed panels.
+    private Rectangle layoutBounds;
+
+    // Create a layout for the given panels, with at least 'spacing' pixels
+    // between them. neighbors[i] holds the indices of the panels that panel i
+    // has relations with.
+    public DiagramLayout(PositionedImage[] images, int[][] neighbors, int spacing) {
+        this.images = images;
+        this.neighbors = neighbors;
+        this.spacing = Math.max(spacing, 1);
+        areas = new Rectangle[images.length];
+    }
+
+    // Aim for the given position for each panel instead of the middle of the
+    // panels it's connected to. Panels are put at their target if it is free.
+    // This is used to remove the overlaps from another layout.
+    public void setTargets(Point[] targets) {
+        this.targets = targets;
+    }
+
+    // Move all the panels to their new positions.
+    public void arrange() {
+        if (images.length == 0) {
+            return;
+        }
+        long totalSize = 0;
+        for (PositionedImage image : images) {
+            totalSize += image.width + image.height + 2 * spacing;
+        }
+        int cellSize = Math.max((int) (totalSize / (2 * images.length) * CELL_SIZE_RATIO), 1);
+        placedGrid = new SpatialGrid(cellSize);
+        openGrid = new SpatialGrid(cellSize);
+        layoutBounds = null;
+        Arrays.fill(areas, null);
+        for (int index : getPlacementOrder()) {
+            place(index);
+        }
+        // Move the panels to the areas that were found for them.
+        for (int i = 0; i < images.length; ++i) {
+            PositionedImage image = images[i];
+            image.x = areas[i].x + image.width / 2;
+            image.y = areas[i].y + image.height / 2;
+        }
+    }
+
+    // Return the order in which to place the panels: each group of connected
+    // panels (largest group first) is walked breadth first, starting at the
+    // panel with the most relations, so that the panels with the most relations
+    // are placed first and get the most room around them.
+    private int[] getPlacementOrder() {
+        Integer[] byDegree = new Integer[images.length];
+        for (int i = 0; i < byDegree.length; ++i) {
+            byDegree[i] = i;
+        }
+        Comparator<Integer> mostNeighborsFirst = (Integer a, Integer b) -> {
+            int result = Integer.compare(neighbors[b].length, neighbors[a].length);
+            return result != 0 ? result : Integer.compare(a, b);
+        };
+        Arrays.sort(byDegree, mostNeighborsFirst);
+        BitSet visited = new BitSet(images.length);
+        ArrayList<int[]> groups = new ArrayList<>();
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        ArrayList<Integer> group = new ArrayList<>();
+        ArrayList<Integer> next = new ArrayList<>();
+        for (int start : byDegree) {
+            if (visited.get(start)) {
+                continue;
+            }
+            visited.set(start);
+            queue.add(start);
+            group.clear();
+            while (!queue.isEmpty()) {
+                int index = queue.poll();
+                group.add(index);
+                next.clear();
+                for (int neighbor : neighbors[index]) {
+                    if (!visited.get(neighbor)) {
+                        visited.set(neighbor);
+                        next.add(neighbor);
+                    }
+                }
+                next.sort(mostNeighborsFirst);
+                queue.addAll(next);
+            }
+            groups.add(group.stream().mapToInt(Integer::intValue).toArray());
+        }
+        // The sort is stable, so groups of the same size stay in order.
+        groups.sort((int[] a, int[] b) -> Integer.compare(b.length, a.length));
+        int[] order = new int[images.length];
+        int position = 0;
+        for (int[] indices : groups) {
+            System.arraycopy(indices, 0, order, position, indices.length);
+            position += indices.length;
+        }
+        return order;
+    }
+
+    private void place(int index) {
+        PositionedImage image = images[index];
+        int width = Math.max(image.width, 0) + spacing;
+        int height = Math.max(image.height, 0) + spacing;
+        if (targets != null) {
+            Point target = targets[index];
+            Rectangle area = new Rectangle(target.x - image.width / 2, target.y - image.height / 2, width, height);
+            if (layoutBounds == null || isFree(area)) {
+                addArea(index, area);
+                return;
+            }
+        } else if (layoutBounds == null) {
+            addArea(index, new Rectangle(-width / 2, -height / 2, width, height));
+            return;
+        }
+        int targetX;
+        int targetY;
+        if (targets != null) {
+            // Aim for the center of the panel at its target.
+            targetX = targets[index].x - image.width / 2 + width / 2;
+            targetY = targets[index].y - image.height / 2 + height / 2;
+        } else {
+            // Aim for the middle of the panels it's connected to, or for the
+            // middle of the diagram if none of them have been placed yet.
+            long sumX = 0;
+            long sumY = 0;
+            int numPlaced = 0;
+            for (int neighbor : neighbors[index]) {
+                Rectangle area = areas[neighbor];
+                if (area != null) {
+                    sumX += area.x + area.width / 2;
+                    sumY += area.y + area.height / 2;
+                    ++numPlaced;
+                }
+            }
+            targetX = numPlaced != 0 ? (int) (sumX / numPlaced) : (int) layoutBounds.getCenterX();
+            targetY = numPlaced != 0 ? (int) (sumY / numPlaced) : (int) layoutBounds.getCenterY();
+        }
+        // Look at the open panels in a square around the target, and make the
+        // square larger until a free spot is found next to one of them. The
+        // square always reaches the edge of the diagram in the end, where there
+        // is room.
+        int radius = Math.max(width, height);
+        Rectangle candidate = new Rectangle(0, 0, width, height);
+        while (true) {
+            Rectangle searchArea = new Rectangle(targetX - radius, targetY - radius, radius * 2, radius * 2);
+            BitSet nearby = openGrid.query(searchArea);
+            Rectangle best = null;
+            long bestDistance = Long.MAX_VALUE;
+            for (int other = nearby.nextSetBit(0); other >= 0; other = nearby.nextSetBit(other + 1)) {
+                Rectangle area = areas[other];
+                boolean open = false;
+                // Try the spots to the right of, below, to the left of and above the panel.
+                for (int side = 0; side < 4; ++side) {
+                    candidate.x = side == 0 ? area.x + area.width : side == 2 ? area.x - width : area.x;
+                    candidate.y = side == 1 ? area.y + area.height : side == 3 ? area.y - height : area.y;
+                    if (!isFree(candidate)) {
+                        continue;
+                    }
+                    open = true;
+                    long deltaX = candidate.x + width / 2 - targetX;
+                    long deltaY = candidate.y + height / 2 - targetY;
+                    long distance = deltaX * deltaX + deltaY * deltaY;
+                    if (distance < bestDistance) {
+                        bestDistance = distance;
+                        best = new Rectangle(candidate);
+                    }
+                }
+                if (!open) {
+                    // The panel is surrounded, so don't look at it again.
+                    openGrid.remove(other);
+                }
+            }
+            if (best != null) {
+                addArea(index, best);
+                return;
+            }
+            if (searchArea.contains(layoutBounds)) {
+                // Only possible if every side of every panel is taken, which
+                // can't happen, but don't loop forever if it does.
+                addArea(index, new Rectangle(layoutBounds.x + layoutBounds.width, layoutBounds.y, width, height));
+                return;
+            }
+            radius *= 2;
+        }
+    }
+
+    // Return whether an area doesn't overlap any of the placed panels. Areas
+    // that only touch are allowed.
+    private boolean isFree(Rectangle area) {
+        // The grid also counts touching areas as overlapping, so leave out the
+        // top and left edges of the area.
+        return placedGrid.isEmpty(new Rectangle(area.x + 1, area.y + 1, area.width - 1, area.height - 1));
+    }
+
+    private void addArea(int index, Rectangle area) {
+        areas[index] = area;
+        placedGrid.update(index, area);
+        openGrid.update(index, area);
+        layoutBounds = layoutBounds == null ? new Rectangle(area) : layoutBounds.union(area);
+    }
+}
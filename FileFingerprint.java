@@ -0,0 +1,55 @@
+package javaprojectview.parser;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+// Identifies the version of a source file that was parsed. The size and the
+// modification time are cheap to check; the hash of the contents is used to
+// recognize files that were touched without actually being changed.
+class FileFingerprint {
+
+    private final long size;
+    private final long lastModified;
+    private final byte[] contentHash;
+
+    // Create the object.
+    FileFingerprint(long size, long lastModified, byte[] contentHash) {
+        this.size = size;
+        this.lastModified = lastModified;
+        this.contentHash = contentHash;
+    }
+
+    // Compute the hash of the contents of a file.
+    static byte[] hash(byte[] contents) {
+        try {
+            return MessageDigest.getInstance("SHA-1").digest(contents);
+        } catch (NoSuchAlgorithmException ex) {
+            // Every Java platform is required to support SHA-1.
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    // Return whether or not a file with the given size and modification time
+    // can be assumed to be unchanged.
+    boolean matches(long size, long lastModified) {
+        return this.size == size && this.lastModified == lastModified;
+    }
+
+    // Return whether or not the contents of the files are the same.
+    boolean hasSameContents(FileFingerprint other) {
+        return size == other.size && Arrays.equals(contentHash, other.contentHash);
+    }
+
+    long getSize() {
+        return size;
+    }
+
+    long getLastModified() {
+        return lastModified;
+    }
+
+    byte[] getContentHash() {
+        return contentHash;
+    }
+}
@@ -0,0 +1,373 @@
+package javaprojectview.uml;
+
+import java.awt.Point;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import javaprojectview.graphics.PositionedImage;
+
+// Places the panels of a diagram by simulating forces between them: every
+// relation is a spring that pulls the two panels together, every pair of
+// panels pushes each other apart (larger panels push harder), and a weak pull
+// towards the middle keeps unconnected panels close. The push between all
+// pairs is approximated with a Barnes-Hut quadtree, in which a group of panels
+// that is far away acts as a single panel, so each step takes about n log n
+// time. The forces on the panels are computed in parallel on all cores. The
+// simulation starts from the layout of DiagramLayout with small random moves,
+// and overlaps that are left at the end are removed by DiagramLayout, so the
+// result only depends on the panels, the relations and the seed.
+public class ForceDirectedLayout {
+
+    private static final int NUM_ITERATIONS = 200;
+    // How much the maximum distance a panel can move in a step shrinks after
+    // each step.
+    private static final double COOLING_FACTOR = 0.97;
+    // Groups of panels that look smaller than this from a panel (size divided
+    // by distance) are treated as a single panel.
+    private static final double THETA = 0.8;
+    // Strength of the pull towards the middle.
+    private static final double GRAVITY = 2.0;
+    // Maximum number of panels that a single parallel force task handles
+    // without splitting the work further.
+    private static final int PANELS_PER_TASK = 256;
+
+    private final PositionedImage[] images;
+    private final int[][] neighbors;
+    private final float[][] strengths;
+    private final int spacing;
+    private final long seed;
+
+    // Positions of the centers of the panels during the simulation.
+    private final double[] positionsX, positionsY;
+    // How hard each panel pushes, compared to a panel of average size.
+    private final double[] masses;
+    // Forces on the panels in the current step.
+    private final double[] forcesX, forcesY;
+    // Distance between connected panels of average size when they are at rest.
+    private double idealDistance;
+
+    // Create a layout for the given panels, with at least 'spacing' pixels
+    // between them. neighbors[i] holds the indices of the panels that panel i
+    // has relations with, and strengths[i] how strongly each of them pulls.
+    public ForceDirectedLayout(PositionedImage[] images, int[][] neighbors, float[][] strengths, int spacing, long seed) {
+        this.images = images;
+        this.neighbors = neighbors;
+        this.strengths = strengths;
+        this.spacing = Math.max(spacing, 1);
+        this.seed = seed;
+        positionsX = new double[images.length];
+        positionsY = new double[images.length];
+        masses = new double[images.length];
+        forcesX = new double[images.length];
+        forcesY = new double[images.length];
+    }
+
+    // Move all the panels to their new positions.
+    public void arrange() {
+        int numPanels = images.length;
+        if (numPanels == 0) {
+            return;
+        }
+        new DiagramLayout(images, neighbors, spacing).arrange();
+        double totalRadius = 0.0;
+        for (PositionedImage image : images) {
+            totalRadius += getRadius(image);
+        }
+        double averageRadius = totalRadius / numPanels;
+        idealDistance = 2.0 * averageRadius + spacing;
+        // Start from the packed layout, moved a little so that panels in a row
+        // don't stay in line.
+        Random random = new Random(seed);
+        for (int i = 0; i < numPanels; ++i) {
+            positionsX[i] = images[i].x + (random.nextDouble() - 0.5) * averageRadius;
+            positionsY[i] = images[i].y + (random.nextDouble() - 0.5) * averageRadius;
+            masses[i] = getRadius(images[i]) / averageRadius;
+        }
+        double temperature = idealDistance * Math.sqrt(numPanels) / 4.0;
+        QuadTree tree = new QuadTree(numPanels);
+        for (int iteration = 0; iteration < NUM_ITERATIONS; ++iteration) {
+            tree.build();
+            ForkJoinPool.commonPool().invoke(new ForceTask(tree, 0, numPanels));
+            // Move every panel along its force, but not further than the
+            // temperature allows.
+            for (int i = 0; i < numPanels; ++i) {
+                double force = Math.hypot(forcesX[i], forcesY[i]);
+                if (force > 0.0) {
+                    double distance = Math.min(force, temperature);
+                    positionsX[i] += forcesX[i] / force * distance;
+                    positionsY[i] += forcesY[i] / force * distance;
+                }
+            }
+            temperature *= COOLING_FACTOR;
+        }
+        // Put the panels as close to their positions as possible without
+        // overlapping.
+        Point[] targets = new Point[numPanels];
+        for (int i = 0; i < numPanels; ++i) {
+            targets[i] = new Point((int) Math.round(positionsX[i]), (int) Math.round(positionsY[i]));
+        }
+        DiagramLayout layout = new DiagramLayout(images, neighbors, spacing);
+        layout.setTargets(targets);
+        layout.arrange();
+    }
+
+    // Compute the force on a single panel. Only writes to the slot of that
+    // panel, so panels can be done in parallel. 'stack' is used to walk the
+    // tree, and is returned, or a larger copy if it was too small.
+    private int[] computeForce(QuadTree tree, int index, int[] stack) {
+        double x = positionsX[index];
+        double y = positionsY[index];
+        double mass = masses[index];
+        double forceX = 0.0;
+        double forceY = 0.0;
+        double repulsion = idealDistance * idealDistance;
+        // Push away from all the other panels.
+        int stackSize = 0;
+        stack[stackSize++] = 0;
+        while (stackSize > 0) {
+            int node = stack[--stackSize];
+            if (tree.kinds[node] == QuadTree.EMPTY || tree.bodies[node] == index) {
+                continue;
+            }
+            double deltaX = x - tree.centersOfMassX[node];
+            double deltaY = y - tree.centersOfMassY[node];
+            double distanceSq = deltaX * deltaX + deltaY * deltaY;
+            double size = tree.sizes[node];
+            if (tree.kinds[node] == QuadTree.INTERNAL && size * size >= THETA * THETA * distanceSq) {
+                // Too close to treat as a single panel, so look at the parts.
+                for (int quadrant = 0; quadrant < 4; ++quadrant) {
+                    int child = tree.children[node * 4 + quadrant];
+                    if (child >= 0) {
+                        if (stackSize == stack.length) {
+                            stack = Arrays.copyOf(stack, stackSize * 2);
+                        }
+                        stack[stackSize++] = child;
+                    }
+                }
+                continue;
+            }
+            if (distanceSq < 1e-6) {
+                // Panels at the same spot are separated by the random moves.
+                continue;
+            }
+            // The push gets weaker with the distance.
+            double factor = repulsion * mass * tree.masses[node] / distanceSq;
+            forceX += deltaX * factor;
+            forceY += deltaY * factor;
+        }
+        // Get pulled towards connected panels, more strongly the further away
+        // they are.
+        int[] panelNeighbors = neighbors[index];
+        float[] panelStrengths = strengths[index];
+        for (int i = 0; i < panelNeighbors.length; ++i) {
+            int neighbor = panelNeighbors[i];
+            double deltaX = positionsX[neighbor] - x;
+            double deltaY = positionsY[neighbor] - y;
+            double distance = Math.sqrt(deltaX * deltaX + deltaY * deltaY);
+            double factor = panelStrengths[i] * distance / idealDistance;
+            forceX += deltaX * factor;
+            forceY += deltaY * factor;
+        }
+        // Get pulled towards the middle, so that unconnected panels don't
+        // drift away.
+        forceX -= x * GRAVITY * mass;
+        forceY -= y * GRAVITY * mass;
+        forcesX[index] = forceX;
+        forcesY[index] = forceY;
+        return stack;
+    }
+
+    private double getRadius(PositionedImage image) {
+        return (Math.max(image.width, 0) + Math.max(image.height, 0)) / 4.0 + spacing / 2.0;
+    }
+
+    // Task that computes the forces for a range of panels, splitting the range
+    // in half until it is small enough.
+    private class ForceTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final QuadTree tree;
+        private final int start, end;
+
+        ForceTask(QuadTree tree, int start, int end) {
+            this.tree = tree;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start > PANELS_PER_TASK) {
+                int middle = (start + end) >>> 1;
+                invokeAll(new ForceTask(tree, start, middle),
+                          new ForceTask(tree, middle, end));
+            } else {
+                // One stack for all the panels of the task.
+                int[] stack = new int[64];
+                for (int i = start; i < end; ++i) {
+                    stack = computeForce(tree, i, stack);
+                }
+            }
+        }
+    }
+
+    // Tree of square cells, each split into four quarters until every cell
+    // holds at most one panel. Each cell knows the total mass and the center
+    // of mass of the panels in it. The cells are stored in arrays, so that the
+    // tree can be rebuilt every step without creating objects.
+    private class QuadTree {
+
+        static final byte EMPTY = 0;
+        // Cell that holds a single panel.
+        static final byte LEAF = 1;
+        static final byte INTERNAL = 2;
+        // Cell that is too small to split, holding multiple panels.
+        static final byte GROUP = 3;
+
+        private static final double MIN_SIZE = 1e-3;
+
+        private final int numPanels;
+        private int numNodes;
+        private byte[] kinds;
+        // Panel in each leaf, or -1.
+        private int[] bodies;
+        // Indices of the four quarters of each cell, or -1.
+        private int[] children;
+        private double[] sizes;
+        // Top left corner of each cell.
+        private double[] lefts, tops;
+        private double[] masses;
+        private double[] centersOfMassX, centersOfMassY;
+
+        QuadTree(int numPanels) {
+            this.numPanels = numPanels;
+            allocate(numPanels * 2 + 1);
+        }
+
+        // Build the tree for the current positions of the panels.
+        void build() {
+            double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+            double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < numPanels; ++i) {
+                minX = Math.min(positionsX[i], minX);
+                minY = Math.min(positionsY[i], minY);
+                maxX = Math.max(positionsX[i], maxX);
+                maxY = Math.max(positionsY[i], maxY);
+            }
+            numNodes = 0;
+            addNode(minX, minY, Math.max(Math.max(maxX - minX, maxY - minY), MIN_SIZE) * 1.0001);
+            for (int i = 0; i < numPanels; ++i) {
+                insert(i);
+            }
+            // The centers of mass were summed up weighted by mass.
+            for (int node = 0; node < numNodes; ++node) {
+                if (masses[node] > 0.0) {
+                    centersOfMassX[node] /= masses[node];
+                    centersOfMassY[node] /= masses[node];
+                }
+            }
+        }
+
+        private void insert(int panel) {
+            double x = positionsX[panel];
+            double y = positionsY[panel];
+            double mass = ForceDirectedLayout.this.masses[panel];
+            int node = 0;
+            while (true) {
+                byte kind = kinds[node];
+                if (kind == EMPTY) {
+                    kinds[node] = LEAF;
+                    bodies[node] = panel;
+                    addMass(node, x, y, mass);
+                    return;
+                }
+                if (kind == GROUP) {
+                    addMass(node, x, y, mass);
+                    return;
+                }
+                if (kind == LEAF) {
+                    if (sizes[node] < MIN_SIZE) {
+                        kinds[node] = GROUP;
+                        bodies[node] = -1;
+                        addMass(node, x, y, mass);
+                        return;
+                    }
+                    // Move the panel that was here down into a quarter.
+                    int other = bodies[node];
+                    kinds[node] = INTERNAL;
+                    bodies[node] = -1;
+                    int child = getChild(node, positionsX[other], positionsY[other]);
+                    kinds[child] = LEAF;
+                    bodies[child] = other;
+                    addMass(child, positionsX[other], positionsY[other], ForceDirectedLayout.this.masses[other]);
+                }
+                addMass(node, x, y, mass);
+                node = getChild(node, x, y);
+            }
+        }
+
+        // Return the quarter of a cell that contains a position, creating it
+        // if needed.
+        private int getChild(int node, double x, double y) {
+            double half = sizes[node] * 0.5;
+            boolean right = x >= lefts[node] + half;
+            boolean bottom = y >= tops[node] + half;
+            int slot = node * 4 + (right ? 1 : 0) + (bottom ? 2 : 0);
+            if (children[slot] < 0) {
+                int child = addNode(right ? lefts[node] + half : lefts[node], bottom ? tops[node] + half : tops[node], half);
+                // The arrays may have been replaced.
+                children[slot] = child;
+            }
+            return children[slot];
+        }
+
+        private void addMass(int node, double x, double y, double mass) {
+            masses[node] += mass;
+            centersOfMassX[node] += x * mass;
+            centersOfMassY[node] += y * mass;
+        }
+
+        private int addNode(double left, double top, double size) {
+            if (numNodes == kinds.length) {
+                allocate(numNodes * 2);
+            }
+            int node = numNodes++;
+            kinds[node] = EMPTY;
+            bodies[node] = -1;
+            Arrays.fill(children, node * 4, node * 4 + 4, -1);
+            sizes[node] = size;
+            lefts[node] = left;
+            tops[node] = top;
+            masses[node] = 0.0;
+            centersOfMassX[node] = 0.0;
+            centersOfMassY[node] = 0.0;
+            return node;
+        }
+
+        private void allocate(int capacity) {
+            if (kinds == null) {
+                kinds = new byte[capacity];
+                bodies = new int[capacity];
+                children = new int[capacity * 4];
+                sizes = new double[capacity];
+                lefts = new double[capacity];
+                tops = new double[capacity];
+                masses = new double[capacity];
+                centersOfMassX = new double[capacity];
+                centersOfMassY = new double[capacity];
+            } else {
+                kinds = Arrays.copyOf(kinds, capacity);
+                bodies = Arrays.copyOf(bodies, capacity);
+                children = Arrays.copyOf(children, capacity * 4);
+                sizes = Arrays.copyOf(sizes, capacity);
+                lefts = Arrays.copyOf(lefts, capacity);
+                tops = Arrays.copyOf(tops, capacity);
+                masses = Arrays.copyOf(masses, capacity);
+                centersOfMassX = Arrays.copyOf(centersOfMassX, capacity);
+                centersOfMassY = Arrays.copyOf(centersOfMassY, capacity);
+            }
+        }
+    }
+}
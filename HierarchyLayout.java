@@ -0,0 +1,487 @@
+package javaprojectview.uml;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import javaprojectview.graphics.PositionedImage;
+
+// Places the panels of a diagram in layers, with every class below the classes
+// it extends or implements (a Sugiyama-style layout):
+// 1. Cycles in the hierarchy (which can only come from code that doesn't
+//    compile) are broken by turning some of the relations around.
+// 2. Every class gets the layer right below its lowest super type. Classes
+//    without super types are put right above their highest sub type.
+// 3. Relations that skip layers get an invisible point on every layer in
+//    between, so that they are taken into account in the next steps.
+// 4. The order of the classes in each layer is changed to reduce the number of
+//    crossing lines, by sorting the classes by the average position of the
+//    classes they're connected to in the layer above or below (the barycenter
+//    heuristic).
+// 5. The classes in each layer are moved as close as possible to the average
+//    position of the classes they're connected to, keeping their order and
+//    the spacing between them. This takes linear time for each layer.
+// 6. Layers that would be much wider than the diagram is high (like a class
+//    with hundreds of sub types) are split into several rows, and layers that
+//    ended up far to the side of the others are moved back, so that the
+//    diagram is never much wider than it is high.
+// Classes without super types or sub types are put in rows below the
+// hierarchy. Other relations don't affect the layout; they are drawn on top
+// of it.
+public class HierarchyLayout {
+
+    // Number of times to go down and up through the layers when ordering and
+    // when positioning the classes.
+    private static final int NUM_ORDER_SWEEPS = 12;
+    private static final int NUM_POSITION_SWEEPS = 8;
+    // Maximum width of a layer, relative to the side of a square with the
+    // same area as all the classes in the hierarchy. Wider layers are split
+    // into rows.
+    private static final double MAX_LAYER_WIDTH_RATIO = 1.5;
+    // Number of classes that always fit next to each other in a layer, so
+    // that small hierarchies aren't split up.
+    private static final int MIN_CLASSES_PER_ROW = 8;
+
+    private final PositionedImage[] images;
+    private final int[][] superTypes;
+    private final int spacing;
+
+    // Classes and invisible points: the first ones are the classes, with the
+    // same indices as the panels.
+    private int numNodes;
+    private int[] layers;
+    private int[] widths;
+    // Whether each class extends, implements or is extended or implemented by
+    // another class.
+    private boolean[] inHierarchy;
+    // Nodes directly above and below each node.
+    private ArrayList<ArrayList<Integer>> uppers;
+    private ArrayList<ArrayList<Integer>> lowers;
+    // Nodes in each layer, from left to right.
+    private ArrayList<ArrayList<Integer>> layerNodes;
+    // Index of each node in its layer, and its horizontal center.
+    private int[] orders;
+    private double[] centers;
+
+    // Create a layout for the given panels, with at least 'spacing' pixels
+    // between them. superTypes[i] holds the indices of the panels of the
+    // classes that class i extends or implements.
+    public HierarchyLayout(PositionedImage[] images, int[][] superTypes, int spacing) {
+        this.images = images;
+        this.superTypes = superTypes;
+        this.spacing = Math.max(spacing, 1);
+    }
+
+    // Move all the panels to their new positions.
+    public void arrange() {
+        int numClasses = images.length;
+        if (numClasses == 0) {
+            return;
+        }
+        numNodes = numClasses;
+        layers = new int[numClasses];
+        widths = new int[numClasses];
+        uppers = new ArrayList<>();
+        lowers = new ArrayList<>();
+        for (int i = 0; i < numClasses; ++i) {
+            widths[i] = Math.max(images[i].width, 0);
+            uppers.add(new ArrayList<>());
+            lowers.add(new ArrayList<>());
+        }
+        breakCycles();
+        assignLayers();
+        addInvisiblePoints();
+        orderLayers();
+        positionNodes();
+        // Put the layers below each other, each within the same range of
+        // maxLayerWidth pixels around the average position of the classes.
+        int maxLayerWidth = getMaxLayerWidth();
+        double centerSum = 0.0;
+        int numHierarchyClasses = 0;
+        for (int i = 0; i < numClasses; ++i) {
+            if (inHierarchy[i]) {
+                centerSum += centers[i];
+                ++numHierarchyClasses;
+            }
+        }
+        double rangeLeft = numHierarchyClasses == 0 ? 0.0 : centerSum / numHierarchyClasses - maxLayerWidth / 2.0;
+        double rangeRight = rangeLeft + maxLayerWidth;
+        int y = 0;
+        for (ArrayList<Integer> nodes : layerNodes) {
+            double layerLeft = Double.POSITIVE_INFINITY;
+            double layerRight = Double.NEGATIVE_INFINITY;
+            for (int node : nodes) {
+                if (node < numClasses) {
+                    layerLeft = Math.min(centers[node] - widths[node] / 2.0, layerLeft);
+                    layerRight = Math.max(centers[node] + widths[node] / 2.0, layerRight);
+                }
+            }
+            int layerHeight = 0;
+            if (layerRight - layerLeft > maxLayerWidth) {
+                layerHeight = placeInRows(nodes, y, maxLayerWidth, rangeLeft);
+            } else if (layerRight > layerLeft) {
+                // Move the layer into the range if it sticks out of it.
+                double shift = Math.max(rangeLeft - layerLeft, 0.0) + Math.min(rangeRight - layerRight, 0.0);
+                for (int node : nodes) {
+                    if (node < numClasses) {
+                        PositionedImage image = images[node];
+                        image.x = (int) Math.round(centers[node] + shift);
+                        image.y = y + image.height / 2;
+                        layerHeight = Math.max(image.height, layerHeight);
+                    }
+                }
+            }
+            if (layerHeight > 0) {
+                y += layerHeight + spacing * 2;
+            }
+        }
+        int right = 0;
+        for (int i = 0; i < numClasses; ++i) {
+            if (inHierarchy[i]) {
+                right = Math.max(images[i].x + images[i].width - images[i].width / 2, right);
+            }
+        }
+        // Put the classes that aren't part of any hierarchy in rows below it.
+        long totalArea = 0;
+        for (int i = 0; i < numClasses; ++i) {
+            if (!inHierarchy[i]) {
+                totalArea += (long) (images[i].width + spacing) * (images[i].height + spacing);
+            }
+        }
+        int rowWidth = Math.max(right, (int) Math.sqrt(totalArea));
+        int x = 0;
+        int rowHeight = 0;
+        for (int i = 0; i < numClasses; ++i) {
+            if (inHierarchy[i]) {
+                continue;
+            }
+            PositionedImage image = images[i];
+            if (x > 0 && x + image.width > rowWidth) {
+                // Start a new row.
+                x = 0;
+                y += rowHeight + spacing;
+                rowHeight = 0;
+            }
+            image.x = x + image.width / 2;
+            image.y = y + image.height / 2;
+            x += image.width + spacing;
+            rowHeight = Math.max(image.height, rowHeight);
+        }
+    }
+
+    // Return the width that a layer may have before it's split into rows: the
+    // side of a square with the area of the classes in the hierarchy (and the
+    // space around them) times MAX_LAYER_WIDTH_RATIO, but at least enough for
+    // MIN_CLASSES_PER_ROW of the widest class.
+    private int getMaxLayerWidth() {
+        long totalArea = 0;
+        int maxWidth = 0;
+        for (int i = 0; i < images.length; ++i) {
+            if (inHierarchy[i]) {
+                totalArea += (long) (widths[i] + spacing) * (Math.max(images[i].height, 0) + spacing * 2);
+                maxWidth = Math.max(widths[i], maxWidth);
+            }
+        }
+        return Math.max((int) (Math.sqrt(totalArea) * MAX_LAYER_WIDTH_RATIO), (maxWidth + spacing) * MIN_CLASSES_PER_ROW - spacing);
+    }
+
+    // Put the classes of a layer in rows of at most maxWidth pixels, keeping
+    // their order, with the rows centered on the average position of the
+    // classes as far as the range from rangeLeft to rangeLeft + maxWidth
+    // allows. Returns the height of all the rows together.
+    private int placeInRows(ArrayList<Integer> nodes, int top, int maxWidth, double rangeLeft) {
+        double centerSum = 0.0;
+        int numLayerClasses = 0;
+        for (int node : nodes) {
+            if (node < images.length) {
+                centerSum += centers[node];
+                ++numLayerClasses;
+            }
+        }
+        double center = centerSum / numLayerClasses;
+        int y = top;
+        int rowStart = 0;
+        while (rowStart < nodes.size()) {
+            // Find the classes that fit in the row, and how wide it is.
+            int rowEnd = rowStart;
+            int rowWidth = 0;
+            int rowHeight = 0;
+            for (; rowEnd < nodes.size(); ++rowEnd) {
+                int node = nodes.get(rowEnd);
+                if (node >= images.length) {
+                    continue;
+                }
+                int width = rowWidth == 0 ? widths[node] : rowWidth + spacing + widths[node];
+                if (rowWidth > 0 && width > maxWidth) {
+                    break;
+                }
+                rowWidth = width;
+                rowHeight = Math.max(images[node].height, rowHeight);
+            }
+            int x = (int) Math.round(Math.max(Math.min(center - rowWidth / 2.0, rangeLeft + maxWidth - rowWidth), rangeLeft));
+            for (int i = rowStart; i < rowEnd; ++i) {
+                int node = nodes.get(i);
+                if (node < images.length) {
+                    PositionedImage image = images[node];
+                    image.x = x + widths[node] / 2;
+                    image.y = y + image.height / 2;
+                    x += widths[node] + spacing;
+                }
+            }
+            rowStart = rowEnd;
+            if (rowStart < nodes.size() && rowHeight > 0) {
+                y += rowHeight + spacing;
+            } else {
+                y += rowHeight;
+            }
+        }
+        return y - top;
+    }
+
+    // Fill in the nodes above and below each class, turning relations around
+    // where they would close a cycle. A depth first search is done from every
+    // class to its super types, and a relation to a class that is still being
+    // searched from closes a cycle.
+    private void breakCycles() {
+        int numClasses = images.length;
+        // 0: not visited yet, 1: being searched from, 2: done.
+        byte[] states = new byte[numClasses];
+        int[] stack = new int[numClasses];
+        int[] nextEdges = new int[numClasses];
+        for (int start = 0; start < numClasses; ++start) {
+            if (states[start] != 0) {
+                continue;
+            }
+            int stackSize = 0;
+            stack[stackSize++] = start;
+            states[start] = 1;
+            while (stackSize > 0) {
+                int node = stack[stackSize - 1];
+                if (nextEdges[node] == superTypes[node].length) {
+                    states[node] = 2;
+                    --stackSize;
+                    continue;
+                }
+                int superType = superTypes[node][nextEdges[node]++];
+                if (superType == node || uppers.get(node).contains(superType) || lowers.get(node).contains(superType)) {
+                    continue;
+                }
+                if (states[superType] == 1) {
+                    // Closes a cycle, so put the super type below instead.
+                    addEdge(node, superType);
+                } else {
+                    addEdge(superType, node);
+                    if (states[superType] == 0) {
+                        states[superType] = 1;
+                        stack[stackSize++] = superType;
+                    }
+                }
+            }
+        }
+    }
+
+    private void addEdge(int upper, int lower) {
+        lowers.get(upper).add(lower);
+        uppers.get(lower).add(upper);
+    }
+
+    // Give every class a layer, going through the classes so that the classes
+    // above a class are done before it.
+    private void assignLayers() {
+        int numClasses = images.length;
+        int[] numUppersLeft = new int[numClasses];
+        int[] order = new int[numClasses];
+        int orderSize = 0;
+        for (int i = 0; i < numClasses; ++i) {
+            numUppersLeft[i] = uppers.get(i).size();
+            if (numUppersLeft[i] == 0) {
+                order[orderSize++] = i;
+            }
+        }
+        for (int i = 0; i < orderSize; ++i) {
+            int node = order[i];
+            for (int lower : lowers.get(node)) {
+                layers[lower] = Math.max(layers[node] + 1, layers[lower]);
+                if (--numUppersLeft[lower] == 0) {
+                    order[orderSize++] = lower;
+                }
+            }
+        }
+        // Move classes without super types down, right above their highest
+        // sub type, so that their relations are as short as possible.
+        inHierarchy = new boolean[numClasses];
+        for (int i = orderSize - 1; i >= 0; --i) {
+            int node = order[i];
+            ArrayList<Integer> nodeLowers = lowers.get(node);
+            inHierarchy[node] = !nodeLowers.isEmpty() || !uppers.get(node).isEmpty();
+            if (uppers.get(node).isEmpty() && !nodeLowers.isEmpty()) {
+                int highestLower = Integer.MAX_VALUE;
+                for (int lower : nodeLowers) {
+                    highestLower = Math.min(layers[lower], highestLower);
+                }
+                layers[node] = highestLower - 1;
+            }
+        }
+    }
+
+    // Replace every relation that skips layers by a chain of invisible points,
+    // one on every layer in between, and put the nodes in their layers.
+    private void addInvisiblePoints() {
+        int numClasses = images.length;
+        int numLayers = 0;
+        for (int i = 0; i < numClasses; ++i) {
+            numLayers = Math.max(layers[i] + 1, numLayers);
+        }
+        for (int upper = 0; upper < numClasses; ++upper) {
+            ArrayList<Integer> upperLowers = lowers.get(upper);
+            for (int i = 0; i < upperLowers.size(); ++i) {
+                int lower = upperLowers.get(i);
+                if (layers[lower] - layers[upper] <= 1) {
+                    continue;
+                }
+                uppers.get(lower).remove((Integer) upper);
+                int previous = upper;
+                for (int layer = layers[upper] + 1; layer < layers[lower]; ++layer) {
+                    int point = addNode(layer, spacing);
+                    if (previous == upper) {
+                        upperLowers.set(i, point);
+                        uppers.get(point).add(upper);
+                    } else {
+                        addEdge(previous, point);
+                    }
+                    previous = point;
+                }
+                addEdge(previous, lower);
+            }
+        }
+        layerNodes = new ArrayList<>();
+        for (int layer = 0; layer < numLayers; ++layer) {
+            layerNodes.add(new ArrayList<>());
+        }
+        orders = new int[numNodes];
+        for (int node = 0; node < numNodes; ++node) {
+            if (node < numClasses && !inHierarchy[node]) {
+                // Put in rows below the hierarchy instead.
+                continue;
+            }
+            ArrayList<Integer> nodes = layerNodes.get(layers[node]);
+            orders[node] = nodes.size();
+            nodes.add(node);
+        }
+    }
+
+    private int addNode(int layer, int width) {
+        if (numNodes == layers.length) {
+            layers = Arrays.copyOf(layers, numNodes * 2);
+            widths = Arrays.copyOf(widths, numNodes * 2);
+        }
+        int node = numNodes++;
+        layers[node] = layer;
+        widths[node] = width;
+        uppers.add(new ArrayList<>());
+        lowers.add(new ArrayList<>());
+        return node;
+    }
+
+    // Reorder the nodes in each layer by the average position of the nodes
+    // they are connected to in the layer above (going down) or below (going
+    // up). Nodes without connections on that side keep their position.
+    private void orderLayers() {
+        double[] barycenters = new double[numNodes];
+        for (int sweep = 0; sweep < NUM_ORDER_SWEEPS; ++sweep) {
+            boolean down = sweep % 2 == 0;
+            for (int i = 1; i < layerNodes.size(); ++i) {
+                ArrayList<Integer> nodes = layerNodes.get(down ? i : layerNodes.size() - 1 - i);
+                for (int node : nodes) {
+                    ArrayList<Integer> others = down ? uppers.get(node) : lowers.get(node);
+                    if (others.isEmpty()) {
+                        barycenters[node] = orders[node];
+                    } else {
+                        double sum = 0.0;
+                        for (int other : others) {
+                            sum += orders[other];
+                        }
+                        barycenters[node] = sum / others.size();
+                    }
+                }
+                // The sort is stable, so nodes with the same barycenter keep
+                // their order.
+                nodes.sort((Integer a, Integer b) -> Double.compare(barycenters[a], barycenters[b]));
+                for (int j = 0; j < nodes.size(); ++j) {
+                    orders[nodes.get(j)] = j;
+                }
+            }
+        }
+    }
+
+    // Give every node a horizontal position. The nodes start next to each
+    // other, and are then moved towards the average position of the nodes
+    // they are connected to, going down and up through the layers.
+    private void positionNodes() {
+        centers = new double[numNodes];
+        for (ArrayList<Integer> nodes : layerNodes) {
+            double x = 0.0;
+            for (int node : nodes) {
+                centers[node] = x + widths[node] / 2.0;
+                x += widths[node] + spacing;
+            }
+        }
+        double[] targets = new double[numNodes];
+        for (int sweep = 0; sweep < NUM_POSITION_SWEEPS; ++sweep) {
+            boolean down = sweep % 2 == 0;
+            for (int i = 1; i < layerNodes.size(); ++i) {
+                ArrayList<Integer> nodes = layerNodes.get(down ? i : layerNodes.size() - 1 - i);
+                for (int node : nodes) {
+                    ArrayList<Integer> others = down ? uppers.get(node) : lowers.get(node);
+                    if (others.isEmpty()) {
+                        targets[node] = centers[node];
+                    } else {
+                        double sum = 0.0;
+                        for (int other : others) {
+                            sum += centers[other];
+                        }
+                        targets[node] = sum / others.size();
+                    }
+                }
+                placeInOrder(nodes, targets);
+            }
+        }
+    }
+
+    // Move the nodes of a layer as close to their targets as possible (in the
+    // least squares sense), keeping them in order with enough space between
+    // them. Subtracting the space that each node needs from the left edge
+    // turns this into finding the closest non-decreasing sequence, which the
+    // pool adjacent violators algorithm does in linear time: go from left to
+    // right, and merge each group of nodes with the group before it while the
+    // group before it would have to be to the right of it.
+    private void placeInOrder(ArrayList<Integer> nodes, double[] targets) {
+        int count = nodes.size();
+        double[] offsets = new double[count];
+        for (int i = 1; i < count; ++i) {
+            int left = nodes.get(i - 1);
+            int right = nodes.get(i);
+            offsets[i] = offsets[i - 1] + (widths[left] + widths[right]) / 2.0 + spacing;
+        }
+        // Groups of nodes that end up right next to each other.
+        double[] groupSums = new double[count];
+        int[] groupSizes = new int[count];
+        int numGroups = 0;
+        for (int i = 0; i < count; ++i) {
+            groupSums[numGroups] = targets[nodes.get(i)] - offsets[i];
+            groupSizes[numGroups] = 1;
+            ++numGroups;
+            while (numGroups > 1 && groupSums[numGroups - 2] * groupSizes[numGroups - 1]
+                                     > groupSums[numGroups - 1] * groupSizes[numGroups - 2]) {
+                groupSums[numGroups - 2] += groupSums[numGroups - 1];
+                groupSizes[numGroups - 2] += groupSizes[numGroups - 1];
+                --numGroups;
+            }
+        }
+        int i = 0;
+        for (int group = 0; group < numGroups; ++group) {
+            double position = groupSums[group] / groupSizes[group];
+            for (int end = i + groupSizes[group]; i < end; ++i) {
+                centers[nodes.get(i)] = position + offsets[i];
+            }
+        }
+    }
+}
@@ -1,6 +1,9 @@
 package javaprojectview.uml;
 
 import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.EventQueue;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.Image;
@@ -8,27 +11,45 @@ import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.RenderingHints;
 import java.awt.Stroke;
+import java.awt.event.ActionEvent;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.awt.event.MouseMotionListener;
 import java.awt.event.MouseWheelEvent;
 import java.awt.event.MouseWheelListener;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashMap;
-import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import javaprojectview.Settings;
+import javaprojectview.Theme;
 import javaprojectview.graphics.ClassInfoPainter;
+import javaprojectview.graphics.PanelImagePyramid;
+import javaprojectview.graphics.PngStripWriter;
 import javaprojectview.graphics.PositionedImage;
+import javaprojectview.graphics.SvgWriter;
 import javaprojectview.parser.ClassInfo;
 import javaprojectview.parser.FieldInfo;
 import javaprojectview.parser.MethodInfo;
 import javaprojectview.parser.ParameterInfo;
 import javaprojectview.parser.ValueInfo;
-import javax.imageio.ImageIO;
 import javax.swing.JPanel;
+import javax.swing.Timer;
 
 public class JavaClassDiagram extends JPanel implements MouseListener, MouseMotionListener, MouseWheelListener {
     
@@ -36,77 +57,253 @@ public class JavaClassDiagram extends JPanel implements MouseListener, MouseMoti
     private final float MAX_FONT_SIZE = 24.0f;
     private final float BASE_ARROW_LINE_WIDTH = 2.0f;
     private final float BASE_ARROW_HEAD_RADIUS = 10.0f;
+    // Font sizes below which the panels only show their title, or are only
+    // boxes, unless other thresholds are set.
+    private static final float DEFAULT_TITLE_ONLY_FONT_SIZE = 6.0f;
+    private static final float DEFAULT_BOX_ONLY_FONT_SIZE = 4.0f;
     
-    private final int RANDOMSORT_OFFSET_ITERATIONS = 16;
+    // Space between the panels when they are placed.
+    private final float BASE_PANEL_SPACING = 40.0f;
+    // Maximum number of pixels that are painted at once when exporting.
+    private final long EXPORT_STRIP_PIXELS = 1 << 22;
+    // Milliseconds that the font size must stay the same before the panels
+    // are painted at the new font size.
+    private static final int RASTER_DELAY = 150;
+    // Size of the cells of the grids that are used to find the panels and
+    // relations in view.
+    private final int SPATIAL_GRID_CELL_SIZE = 256;
+    // Maximum number of changed areas that are painted one by one; when more
+    // areas change, all of the view is painted again instead.
+    private final int MAX_DIRTY_AREAS = 64;
+    
+    // Workers that paint the class info panels in the background, shared by all
+    // diagrams. There is one worker per core, so zooming a large diagram can't
+    // start more threads than the machine can run at once.
+    private static final ExecutorService RASTER_POOL = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), (Runnable runnable) -> {
+                Thread thread = new Thread(runnable, "Panel rasterizer");
+                thread.setDaemon(true);
+                return thread;
+            });
     
     // Virtual X and Y values of top left corner of the JPanel.
     private int viewX, viewY;
     // Size of the font used in class info panels.
     private float fontSize;
     // Internal counter to keep track of how many times the font size has been changed.
-    private int resizeCount;
+    // Workers compare it to the value it had when they were started, to find out
+    // whether their work is still needed.
+    private final AtomicInteger resizeCount;
     
     private final ClassInfo[] classes;
     private final HashMap<ClassInfo, Integer> classIndexMap;
     private final PositionedImage[] classInfoImages;
     private final ClassInfoPainter[] classPainters;
-    private final ArrayList<Relation> relations;
+    // Font size and level of detail that the current image of each panel was
+    // painted at. Panels without an image are painted as boxes.
+    private final float[] imageFontSizes;
+    private final ClassInfoPainter.Detail[] imageDetails;
+    // Font sizes below which less of the panels is painted.
+    private float titleOnlyFontSize;
+    private float boxOnlyFontSize;
+    // Relations between the classes, by the indices of their panels.
+    private final RelationIndex relations;
+    // Bounds of the panels and the lines of the relations, so that only the
+    // ones in view are painted. They must be updated whenever a panel moves or
+    // changes size.
+    private final SpatialGrid panelGrid;
+    private final SpatialGrid relationGrid;
+    // Line and arrow head of each relation, which are updated along with the
+    // relation's bounds, so that painting doesn't have to work them out again.
+    private Arrow[] arrows;
+    // Lines and arrow heads of the relations in view, by how they're drawn,
+    // so that each kind is drawn at once. They're only used while painting.
+    private final Path2D.Double solidLines;
+    private final Path2D.Double dashedLines;
+    private final Path2D.Double filledHeads;
+    // Part of a line that lies in the painted area, used by addLine.
+    private final double[] linePart;
+    // Strokes of the lines, for the font size that they were made for.
+    private Stroke solidStroke;
+    private Stroke dashedStroke;
+    private float strokeFontSize;
+    // Background tasks that paint the panels for the latest font size.
+    private final ArrayList<Future<?>> rasterTasks;
+    // Starts painting the panels once the font size stopped changing.
+    private final Timer rasterTimer;
+    // Images of the panels at a few font sizes, which are shown scaled right
+    // after zooming.
+    private final PanelImagePyramid pyramid;
+    // Pixels of the view as they were painted last time, so that scrolling
+    // only has to paint the part that comes into view, and moving a panel only
+    // the area around it. Null until the diagram is painted for the first time.
+    private BufferedImage backBuffer;
+    // View, screen pixels per view pixel and theme that the back buffer was
+    // painted for.
+    private int bufferViewX, bufferViewY;
+    private double bufferScaleX, bufferScaleY;
+    private Theme bufferTheme;
+    // False if all of the back buffer must be painted again.
+    private boolean bufferValid;
+    // Areas of the diagram (not of the view) that changed since the back
+    // buffer was painted.
+    private final ArrayList<Rectangle> dirtyAreas;
+    // Number of layouts that were started, so that a layout that is computed
+    // in the background isn't applied after a newer one.
+    private int layoutCount;
     
     
     public JavaClassDiagram(ClassInfo[] classes) {
+        this(classes, 12.0f, null);
+    }
+    
+    // Create and build a diagram with the class info panels painted at the
+    // given font size. See build for the listener.
+    public JavaClassDiagram(ClassInfo[] classes, float fontSize, DiagramBuildListener listener) {
+        this(classes, fontSize);
+        build(listener);
+    }
+    
+    // Create a diagram for the classes, without building it yet. Like any other
+    // component, it must be created on the event dispatch thread. It can't be
+    // shown until build has been called.
+    public JavaClassDiagram(ClassInfo[] classes, float fontSize) {
         viewX = 0;
         viewY = 0;
-        fontSize = 12.0f;
-        resizeCount = 0;
+        this.fontSize = fontSize;
+        resizeCount = new AtomicInteger();
         this.classes = classes;
         classIndexMap = new HashMap<>();
         classInfoImages = new PositionedImage[classes.length];
         classPainters = new ClassInfoPainter[classes.length];
-        relations = new ArrayList<>();
+        imageFontSizes = new float[classes.length];
+        imageDetails = new ClassInfoPainter.Detail[classes.length];
+        titleOnlyFontSize = DEFAULT_TITLE_ONLY_FONT_SIZE;
+        boxOnlyFontSize = DEFAULT_BOX_ONLY_FONT_SIZE;
+        relations = new RelationIndex(classes.length);
+        panelGrid = new SpatialGrid(SPATIAL_GRID_CELL_SIZE);
+        relationGrid = new SpatialGrid(SPATIAL_GRID_CELL_SIZE);
+        solidLines = new Path2D.Double();
+        dashedLines = new Path2D.Double();
+        filledHeads = new Path2D.Double();
+        linePart = new double[2];
+        rasterTasks = new ArrayList<>();
+        rasterTimer = new Timer(RASTER_DELAY, (ActionEvent event) -> {
+            startRasterization();
+        });
+        rasterTimer.setRepeats(false);
+        pyramid = new PanelImagePyramid(classes.length);
+        dirtyAreas = new ArrayList<>();
+        addMouseListener(this);
+        addMouseMotionListener(this);
+        addMouseWheelListener(this);
+        setBackground(Settings.getInstance().getColor("diagram-background"));
+    }
+    
+    // Find the relations, paint the panels and lay them out. If 'listener'
+    // isn't null, it is told when each step starts, and can cancel building
+    // the diagram. This is the slow part of creating a diagram, so it can be
+    // called on another thread than the event dispatch thread, as long as the
+    // diagram isn't shown before it's done.
+    public final void build(DiagramBuildListener listener) {
+        startPhase(listener, DiagramBuildListener.RELATIONS);
         initialize();
-        setFontSize(12.0f, 0, 0);
+        startPhase(listener, DiagramBuildListener.RASTERIZATION);
+        // The layout needs the sizes of the panels, so wait for the images.
+        rasterizeAll();
+        startPhase(listener, DiagramBuildListener.LAYOUT);
         autoSort();
     }
     
+    // Tell the listener (if any) that a step of building the diagram starts,
+    // unless it cancelled building the diagram.
+    private static void startPhase(DiagramBuildListener listener, String phase) {
+        if (listener != null) {
+            if (listener.isCancelled()) {
+                throw new CancellationException();
+            }
+            listener.phaseStarted(phase);
+        }
+    }
+    
+    // Place the panels so that they don't overlap, with connected panels close
+    // to each other.
     public void separateBoxes() {
+        ++layoutCount;
         float zoomRatio = fontSize / Settings.getInstance().getBaseFontSize();
-        Random random = new Random();
-        int maxOffset = (int) (100 * zoomRatio + 0.5f);
-        int offsetIteration = 0;
-        boolean valid;
-        do {
-            int zmOffset = random.nextInt(maxOffset) + 1;
-            for (PositionedImage positionedImage : classInfoImages) {
-                positionedImage.x = random.nextInt(zmOffset * 2 + 1) - zmOffset;
-                positionedImage.y = random.nextInt(zmOffset * 2 + 1) - zmOffset;
+        int spacing = Math.max((int) (BASE_PANEL_SPACING * zoomRatio + 0.5f), 1);
+        new DiagramLayout(classInfoImages, getPanelNeighbors(), spacing).arrange();
+        rebuildSpatialIndex();
+    }
+    
+    // Prepare a layout that places the panels by simulating the relations as
+    // springs between them. The same seed always gives the same layout. It
+    // takes a while for large diagrams, so it can be arranged on another
+    // thread, and then applied on the event dispatch thread.
+    public PendingLayout prepareForceDirectedLayout(long seed) {
+        return new PendingLayout(seed);
+    }
+    
+    // Place the panels in layers, with every class below the classes it
+    // extends or implements.
+    public void separateBoxesHierarchy() {
+        ++layoutCount;
+        float zoomRatio = fontSize / Settings.getInstance().getBaseFontSize();
+        int spacing = Math.max((int) (BASE_PANEL_SPACING * zoomRatio + 0.5f), 1);
+        // Indices of the panels of the super types of each class.
+        int[][] superTypes = new int[classInfoImages.length][];
+        for (int i = 0; i < superTypes.length; ++i) {
+            ArrayList<Integer> superTypeIndices = new ArrayList<>();
+            for (int relationIndex : relations.getOutgoing(i)) {
+                Relation.Type type = relations.get(relationIndex).getType();
+                if (type == Relation.Type.GENERALIZATION || type == Relation.Type.REALIZATION) {
+                    superTypeIndices.add(relations.getToIndex(relationIndex));
+                }
             }
-            if (++offsetIteration >= RANDOMSORT_OFFSET_ITERATIONS) {
-                maxOffset += 1;
-                offsetIteration = 0;
+            superTypes[i] = new int[superTypeIndices.size()];
+            for (int j = 0; j < superTypes[i].length; ++j) {
+                superTypes[i][j] = superTypeIndices.get(j);
             }
-            valid = true;
-            for (int i = 0; i < classInfoImages.length; ++i) {
-                ClassInfo class1 = classes[i];
-                PositionedImage image1 = classInfoImages[i];
-                Rectangle bounds1 = image1.getBounds();
-                for (int j = i + 1; j < classInfoImages.length; ++j) {
-                    ClassInfo class2 = classes[j];
-                    PositionedImage image2 = classInfoImages[j];
-                    Rectangle bounds2 = image2.getBounds();
-                    if (bounds1.intersects(bounds2)) {
-                        valid = false;
-                        break;
-                    }
-                }
-                if (!valid) {
-                    break;
-                }
+        }
+        new HierarchyLayout(classInfoImages, superTypes, spacing).arrange();
+        rebuildSpatialIndex();
+    }
+    
+    // Return the indices of the panels that each panel has relations with.
+    private int[][] getPanelNeighbors() {
+        int[][] neighbors = new int[classInfoImages.length][];
+        for (int i = 0; i < neighbors.length; ++i) {
+            int[] relationIndices = relations.getIncident(i);
+            neighbors[i] = new int[relationIndices.length];
+            for (int j = 0; j < relationIndices.length; ++j) {
+                neighbors[i][j] = relations.getOtherIndex(relationIndices[j], i);
             }
-        } while (!valid);
+        }
+        return neighbors;
     }
     
     public final void autoSort() {
         separateBoxes();
+        moveViewToTopLeft();
+    }
+    
+    // Lay out the panels with a force-directed layout right away, and move the
+    // view to the top left of the diagram.
+    public void autoSortForceDirected(long seed) {
+        PendingLayout layout = prepareForceDirectedLayout(seed);
+        layout.arrange();
+        layout.apply();
+    }
+    
+    // Lay out the panels with separateBoxesHierarchy, and move the view to the
+    // top left of the diagram.
+    public void autoSortHierarchy() {
+        separateBoxesHierarchy();
+        moveViewToTopLeft();
+        repaint();
+    }
+    
+    private void moveViewToTopLeft() {
         // Find top left of the diagram.
         Point topLeft = new Point(Integer.MAX_VALUE, Integer.MAX_VALUE);
         for (PositionedImage image : classInfoImages) {
@@ -122,37 +319,241 @@ public class JavaClassDiagram extends JPanel implements MouseListener, MouseMoti
         viewY = topLeft.y;
     }
     
-    public final synchronized void setFontSize(float fontSize, int centerX, int centerY) {
-        int resizeId = ++resizeCount;
+    // Change the font size, zooming in or out around (centerX, centerY). The
+    // panels are moved and resized right away, and show the image (painted
+    // for another font size) that looks best when it's scaled: the current
+    // one or one from the pyramid. Only once the font size hasn't changed for
+    // RASTER_DELAY milliseconds, the workers paint the panels at the new font
+    // size, so zooming quickly doesn't paint images that are replaced right
+    // away. Starting another resize cancels the work for this one that hasn't
+    // been done yet.
+    public final void setFontSize(float fontSize, int centerX, int centerY) {
+        resizeCount.incrementAndGet();
         float zoomRatio = fontSize / this.fontSize;
         this.fontSize = fontSize;
-        Thread[] resizeThreads = new Thread[classPainters.length];
-        Rectangle viewBounds = new Rectangle(viewX, viewY, getWidth(), getHeight());
+        cancelRasterization();
+        ClassInfoPainter.Detail detail = getDetail(fontSize);
         for (int i = 0; i < classPainters.length; ++i) {
             PositionedImage positionedImage = classInfoImages[i];
             // Scale the distance between the image's center and the zoom center along with the zoom factor.
             positionedImage.x = (int) ((positionedImage.x - centerX) * zoomRatio + centerX + 0.5f);
             positionedImage.y = (int) ((positionedImage.y - centerY) * zoomRatio + centerY + 0.5f);
-            ClassInfoPainter painter = classPainters[i];
-            Image image = painter.paintImage(fontSize);
-                // Only update image if no other resize processes started in the meantime.
-            if (resizeCount == resizeId) {
-                positionedImage.setImage(image);
+            if (detail == ClassInfoPainter.Detail.BOX) {
+                // Boxes are painted without an image, so only the size is
+                // needed, which the painter measures without painting.
+                setBox(i, fontSize);
+            } else {
+                showBestImage(i, fontSize);
             }
         }
+        rebuildSpatialIndex();
+        if (detail != ClassInfoPainter.Detail.BOX) {
+            rasterTimer.restart();
+        }
         // Repaint the diagram to apply the changes to class info panel positions.
         repaint();
     }
     
+    // Show the image of a panel that looks best at a font size until it's
+    // painted at that size, scaled to the size that the panel will have.
+    // That's the smallest image that is at least as large, since scaling
+    // images down looks better than scaling them up, or else the largest one.
+    private void showBestImage(int index, float fontSize) {
+        PositionedImage positionedImage = classInfoImages[index];
+        Image image = positionedImage.getImage();
+        float imageFontSize = imageFontSizes[index];
+        ClassInfoPainter.Detail imageDetail = imageDetails[index];
+        int level = pyramid.findBestLevel(index, fontSize);
+        if (level >= 0) {
+            float levelFontSize = PanelImagePyramid.getLevelFontSize(level);
+            boolean levelIsLarger = levelFontSize >= fontSize;
+            boolean imageIsLarger = imageFontSize >= fontSize;
+            if (image == null || (levelIsLarger && (!imageIsLarger || levelFontSize < imageFontSize))
+                    || (!levelIsLarger && !imageIsLarger && levelFontSize > imageFontSize)) {
+                image = pyramid.get(index, level);
+                imageFontSize = levelFontSize;
+                imageDetail = getDetail(levelFontSize);
+            }
+        }
+        if (image == null) {
+            // Without any image, the panel is painted as a box of the right
+            // size until it's painted.
+            Dimension size = classPainters[index].getSize(fontSize);
+            positionedImage.width = size.width;
+            positionedImage.height = size.height;
+            return;
+        }
+        positionedImage.setImage(image);
+        imageFontSizes[index] = imageFontSize;
+        imageDetails[index] = imageDetail;
+        // Estimate the new size until the new image is ready.
+        float zoomRatio = fontSize / imageFontSize;
+        positionedImage.width = (int) (positionedImage.width * zoomRatio + 0.5f);
+        positionedImage.height = (int) (positionedImage.height * zoomRatio + 0.5f);
+    }
+    
+    // Paint the panels at the current font size in the background: the panels
+    // in view first, and then the others. Afterwards, the images of the level
+    // of the pyramid that is closest to the font size are painted if they are
+    // missing, so that the next zoom has images of a similar size to show.
+    private void startRasterization() {
+        float fontSize = this.fontSize;
+        ClassInfoPainter.Detail detail = getDetail(fontSize);
+        if (detail == ClassInfoPainter.Detail.BOX) {
+            return;
+        }
+        int resizeId = resizeCount.get();
+        Rectangle viewBounds = new Rectangle(viewX, viewY, getWidth(), getHeight());
+        ArrayList<Integer> hiddenPanels = new ArrayList<>();
+        for (int i = 0; i < classPainters.length; ++i) {
+            if (imageFontSizes[i] != fontSize || imageDetails[i] != detail) {
+                if (classInfoImages[i].getBounds().intersects(viewBounds)) {
+                    rasterTasks.add(startRasterization(i, fontSize, detail, resizeId, true));
+                } else {
+                    hiddenPanels.add(i);
+                }
+            }
+        }
+        for (int i : hiddenPanels) {
+            rasterTasks.add(startRasterization(i, fontSize, detail, resizeId, true));
+        }
+        int level = PanelImagePyramid.getClosestLevel(fontSize);
+        float levelFontSize = PanelImagePyramid.getLevelFontSize(level);
+        ClassInfoPainter.Detail levelDetail = getDetail(levelFontSize);
+        if (levelFontSize != fontSize && levelDetail != ClassInfoPainter.Detail.BOX) {
+            for (int i = 0; i < classPainters.length; ++i) {
+                if (pyramid.get(i, level) == null) {
+                    rasterTasks.add(startRasterization(i, levelFontSize, levelDetail, resizeId, false));
+                }
+            }
+        }
+    }
+    
+    // Set the level of detail of the panels: below titleOnlyFontSize only the
+    // titles of the panels are painted, and below boxOnlyFontSize (which
+    // should be smaller) the panels are painted as plain boxes.
+    public void setDetailThresholds(float titleOnlyFontSize, float boxOnlyFontSize) {
+        this.titleOnlyFontSize = titleOnlyFontSize;
+        this.boxOnlyFontSize = boxOnlyFontSize;
+        // The images in the pyramid may have the wrong level of detail now.
+        pyramid.clear();
+        // Paint the panels again at the same font size.
+        setFontSize(fontSize, viewX, viewY);
+    }
+    
+    // Return how much of the panels is painted at a font size.
+    private ClassInfoPainter.Detail getDetail(float fontSize) {
+        if (fontSize < boxOnlyFontSize) {
+            return ClassInfoPainter.Detail.BOX;
+        }
+        return fontSize < titleOnlyFontSize ? ClassInfoPainter.Detail.TITLE : ClassInfoPainter.Detail.FULL;
+    }
+    
+    // Remove the image of a panel, so that it's painted as a box, and give it
+    // its size at the font size.
+    private void setBox(int index, float fontSize) {
+        PositionedImage positionedImage = classInfoImages[index];
+        Dimension size = classPainters[index].getSize(fontSize);
+        positionedImage.setImage(null);
+        positionedImage.width = size.width;
+        positionedImage.height = size.height;
+        imageFontSizes[index] = fontSize;
+        imageDetails[index] = ClassInfoPainter.Detail.BOX;
+    }
+    
+    // Paint the image of a panel in the background. When it's done, the image
+    // is stored in the pyramid if the font size is one of its levels, and if
+    // 'show' is true, it replaces the image of the panel (on the event
+    // dispatch thread).
+    private Future<?> startRasterization(int index, float fontSize, ClassInfoPainter.Detail detail, int resizeId, boolean show) {
+        ClassInfoPainter painter = classPainters[index];
+        return RASTER_POOL.submit(() -> {
+            if (resizeCount.get() != resizeId) {
+                // Another resize started before this task did.
+                return;
+            }
+            Image image = painter.paintImage(fontSize, detail);
+            EventQueue.invokeLater(() -> {
+                storeInPyramid(index, fontSize, detail, image);
+                // Only update image if no other resize processes started in the meantime.
+                if (show && resizeCount.get() == resizeId) {
+                    // Paint the area of the old and the new image again.
+                    invalidatePanel(index);
+                    classInfoImages[index].setImage(image);
+                    imageFontSizes[index] = fontSize;
+                    imageDetails[index] = detail;
+                    updatePanelBounds(index);
+                    invalidatePanel(index);
+                    repaint();
+                }
+            });
+        });
+    }
+    
+    // Store the image of a panel in the pyramid, if it was painted at the font
+    // size of one of its levels with the level of detail of that font size.
+    private void storeInPyramid(int index, float fontSize, ClassInfoPainter.Detail detail, Image image) {
+        int level = PanelImagePyramid.getLevel(fontSize);
+        if (level >= 0 && detail == getDetail(fontSize)) {
+            pyramid.put(index, level, image, this.fontSize);
+        }
+    }
+    
+    // Cancel the background tasks that haven't started yet.
+    private void cancelRasterization() {
+        for (Future<?> task : rasterTasks) {
+            task.cancel(false);
+        }
+        rasterTasks.clear();
+    }
+    
+    // Paint the images of all the panels that don't match the current font size
+    // and level of detail yet, using all the workers, and wait until they're
+    // done.
+    private void rasterizeAll() {
+        float fontSize = this.fontSize;
+        ClassInfoPainter.Detail detail = getDetail(fontSize);
+        ArrayList<Integer> indices = new ArrayList<>();
+        ArrayList<Future<Image>> results = new ArrayList<>();
+        for (int i = 0; i < classPainters.length; ++i) {
+            if (imageFontSizes[i] != fontSize || imageDetails[i] != detail) {
+                if (detail == ClassInfoPainter.Detail.BOX) {
+                    setBox(i, fontSize);
+                    continue;
+                }
+                ClassInfoPainter painter = classPainters[i];
+                indices.add(i);
+                results.add(RASTER_POOL.submit(() -> painter.paintImage(fontSize, detail)));
+            }
+        }
+        try {
+            for (int i = 0; i < results.size(); ++i) {
+                int index = indices.get(i);
+                Image image = results.get(i).get();
+                classInfoImages[index].setImage(image);
+                imageFontSizes[index] = fontSize;
+                imageDetails[index] = detail;
+                storeInPyramid(index, fontSize, detail, image);
+            }
+            rebuildSpatialIndex();
+        } catch (InterruptedException ex) {
+            for (Future<Image> result : results) {
+                result.cancel(false);
+            }
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ex) {
+            throw new IllegalStateException(ex.getCause());
+        }
+    }
+    
     private void initialize() {
-        addMouseListener(this);
-        addMouseMotionListener(this);
-        addMouseWheelListener(this);
-        Settings settings = Settings.getInstance();
-        setBackground(settings.getColor("diagram-background"));
+        // Relations are stored by the indices of the classes, so all of them
+        // need an index first.
+        for (int i = 0; i < classes.length; ++i) {
+            classIndexMap.put(classes[i], i);
+        }
         for (int i = 0; i < classes.length; ++i) {
             ClassInfo classInfo = classes[i];
-            classIndexMap.put(classInfo, i);
             // Add relation for "extends".
             ClassInfo superClass = classInfo.getSuperClass();
             if (superClass != null) {
@@ -169,7 +570,7 @@ public class JavaClassDiagram extends JPanel implements MouseListener, MouseMoti
             }
             ClassInfoPainter painter = new ClassInfoPainter(classInfo.getSmartTextName());
             for (FieldInfo info : classInfo.getFields()) {
-                ClassInfo fieldType = classInfo.resolveClass(info.getTypeName());
+                ClassInfo fieldType = info.getResolvedType();
                 if (fieldType != null) {
                     // Show fields of custom types as associations.
                     addRelation(new Relation(Relation.Type.ASSOCIATION, classInfo, fieldType)); //, info.toSmartText(true)));
@@ -179,18 +580,18 @@ public class JavaClassDiagram extends JPanel implements MouseListener, MouseMoti
             // Add return type, parameter types and variable types of methods as "dependency".
             for (MethodInfo info : classInfo.getMethods()) {
                 painter.add(info);
-                ClassInfo returnType = classInfo.resolveClass(info.getTypeName());
+                ClassInfo returnType = info.getResolvedType();
                 if (returnType != null) {
                     addRelation(new Relation(Relation.Type.DEPENDENCY, classInfo, returnType));
                 }
                 for (ParameterInfo parameterInfo : info.getParameters()) {
-                    ClassInfo parameterType = classInfo.resolveClass(parameterInfo.getTypeName());
+                    ClassInfo parameterType = parameterInfo.getResolvedType();
                     if (parameterType != null) {
                         addRelation(new Relation(Relation.Type.DEPENDENCY, classInfo, parameterType));
                     }
                 }
                 for (ValueInfo variableInfo : info.getVariables()) {
-                    ClassInfo variableType = classInfo.resolveClass(variableInfo.getTypeName());
+                    ClassInfo variableType = variableInfo.getResolvedType();
                     if (variableType != null) {
                         addRelation(new Relation(Relation.Type.DEPENDENCY, classInfo, variableType)); //, new SmartText().append(variableInfo.getName())));
                     }
@@ -199,179 +600,632 @@ public class JavaClassDiagram extends JPanel implements MouseListener, MouseMoti
             classInfoImages[i] = new PositionedImage();
             classPainters[i] = painter;
         }
+        arrows = new Arrow[relations.size()];
+        for (int i = 0; i < arrows.length; ++i) {
+            arrows[i] = new Arrow();
+        }
+        rebuildSpatialIndex();
     }
     
-    private void addRelation(Relation relation) {
+    // Store the bounds of all the panels and relations in the grids again,
+    // after many panels were moved or resized.
+    private void rebuildSpatialIndex() {
+        invalidateBackBuffer();
+        for (int i = 0; i < classInfoImages.length; ++i) {
+            panelGrid.update(i, classInfoImages[i].getBounds());
+        }
         for (int i = 0, numRelations = relations.size(); i < numRelations; ++i) {
-            Relation existingRelation = relations.get(i);
-            if (relation.hasSameConnection(existingRelation)) {
-                // If a relationship already exists with the same objects in the same
-                // direction as the new relation, and the new relationship is of a more
-                // important type than the existing one, then replace it.
-                if (relation.isMoreImportantThan(existingRelation)) {
-                    relations.set(i, relation);
-                }
-                // If a relationship between the given objects in the same direction
-                // already exists, then don't create a new entry; just exit the function
-                // here.
-                return;
+            updateRelationBounds(i);
+        }
+    }
+    
+    // Store the bounds of a panel and of the relations connected to it in the
+    // grids again, after the panel was moved or resized.
+    private void updatePanelBounds(int index) {
+        panelGrid.update(index, classInfoImages[index].getBounds());
+        for (int relationIndex : relations.getIncident(index)) {
+            updateRelationBounds(relationIndex);
+        }
+    }
+    
+    private void updateRelationBounds(int index) {
+        int fromIndex = relations.getFromIndex(index);
+        int toIndex = relations.getToIndex(index);
+        if (fromIndex == toIndex) {
+            // Relations of a class to itself aren't painted.
+            return;
+        }
+        Rectangle fromBounds = classInfoImages[fromIndex].getBounds();
+        Rectangle toBounds = classInfoImages[toIndex].getBounds();
+        // Store the line between the points where the arrow starts and ends.
+        // The arrow head sticks out of that line, but paint grows the area
+        // that it looks up by more than the head's size.
+        Point fromPoint = PositionedImage.getConnectionPoint(fromBounds, toBounds);
+        Point toPoint = PositionedImage.getConnectionPoint(toBounds, fromBounds);
+        if (fromPoint == null || toPoint == null) {
+            // Leave out relations that can't be connected, rather than fail.
+            relationGrid.remove(index);
+            return;
+        }
+        relationGrid.updateLine(index, fromPoint.x, fromPoint.y, toPoint.x, toPoint.y);
+        float zoomRatio = fontSize / Settings.getInstance().getBaseFontSize();
+        arrows[index].set(fromPoint, toPoint, zoomRatio * BASE_ARROW_HEAD_RADIUS, zoomRatio * BASE_ARROW_LINE_WIDTH);
+    }
+    
+    private void addRelation(Relation relation) {
+        // If a relationship already exists with the same objects in the same
+        // direction as the new relation, then only the one with the more
+        // important type is kept.
+        relations.add(relation, classIndexMap.get(relation.getFrom()), classIndexMap.get(relation.getTo()));
+    }
+    
+    // Mark the area of a panel and of its relations as changed, so that it's
+    // painted again in the back buffer. When a panel moves or changes size,
+    // this is done both before and after, for the old and the new area.
+    private void invalidatePanel(int index) {
+        if (!bufferValid) {
+            return;
+        }
+        invalidateArea(classInfoImages[index].getBounds());
+        int arrowMargin = getArrowMargin();
+        for (int relationIndex : relations.getIncident(index)) {
+            int fromIndex = relations.getFromIndex(relationIndex);
+            int toIndex = relations.getToIndex(relationIndex);
+            if (fromIndex == toIndex) {
+                continue;
             }
+            // The arrow is only updated along with the panel's bounds, so
+            // before a move it still covers the old area.
+            Arrow arrow = arrows[relationIndex];
+            Rectangle area = new Rectangle(arrow.fromX, arrow.fromY, 0, 0);
+            area.add(arrow.toX, arrow.toY);
+            area.grow(arrowMargin, arrowMargin);
+            invalidateArea(area);
+        }
+    }
+    
+    private void invalidateArea(Rectangle area) {
+        if (dirtyAreas.size() >= MAX_DIRTY_AREAS) {
+            // Painting everything at once is faster than painting this many
+            // areas one by one.
+            invalidateBackBuffer();
+        } else if (bufferValid) {
+            dirtyAreas.add(area);
         }
-        relations.add(relation);
     }
     
+    // Mark all of the back buffer as changed.
+    private void invalidateBackBuffer() {
+        bufferValid = false;
+        dirtyAreas.clear();
+    }
+    
+    // Return how far arrow heads and thick lines can stick out of the line
+    // between the points where a relation starts and ends.
+    private int getArrowMargin() {
+        float zoomRatio = fontSize / Settings.getInstance().getBaseFontSize();
+        return (int) Math.ceil(zoomRatio * (BASE_ARROW_HEAD_RADIUS + BASE_ARROW_LINE_WIDTH));
+    }
+    
+    // Paint the diagram from the back buffer, after painting the parts of it
+    // that changed.
     @Override
     public void paint(Graphics graphics) {
         super.paint(graphics);
+        int width = getWidth();
+        int height = getHeight();
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+        // The back buffer has one pixel per screen pixel, so it's drawn
+        // without the scale of the UI (which would blur it).
+        AffineTransform scale = getGraphicsConfiguration() == null
+                ? new AffineTransform() : getGraphicsConfiguration().getDefaultTransform();
+        updateBackBuffer(width, height, scale.getScaleX(), scale.getScaleY());
+        Graphics2D graphics2d = (Graphics2D) graphics;
+        AffineTransform transform = graphics2d.getTransform();
+        graphics2d.setTransform(AffineTransform.getTranslateInstance(Math.round(transform.getTranslateX()), Math.round(transform.getTranslateY())));
+        graphics2d.drawImage(backBuffer, 0, 0, null);
+        graphics2d.setTransform(transform);
+    }
+    
+    // Bring the back buffer up to date with the view: when the view moved,
+    // the pixels that are still in view are moved along and only the strips
+    // that came into view are painted, and then the areas that changed are
+    // painted. Everything is painted if the size or scale of the view or the
+    // theme changed, if the view moved by a fraction of a screen pixel, or if
+    // the buffer was invalidated. The buffer has the size of the view in
+    // screen pixels, with (scaleX, scaleY) screen pixels per view pixel.
+    private void updateBackBuffer(int width, int height, double scaleX, double scaleY) {
+        Theme theme = Settings.getInstance().getTheme();
+        int bufferWidth = (int) Math.ceil(width * scaleX);
+        int bufferHeight = (int) Math.ceil(height * scaleY);
+        if (backBuffer == null || backBuffer.getWidth() != bufferWidth || backBuffer.getHeight() != bufferHeight
+                || bufferScaleX != scaleX || bufferScaleY != scaleY) {
+            backBuffer = new BufferedImage(bufferWidth, bufferHeight, BufferedImage.TYPE_INT_RGB);
+            bufferScaleX = scaleX;
+            bufferScaleY = scaleY;
+            invalidateBackBuffer();
+        }
+        if (theme != bufferTheme) {
+            bufferTheme = theme;
+            invalidateBackBuffer();
+        }
+        Graphics2D graphics = backBuffer.createGraphics();
+        try {
+            int shiftX = bufferViewX - viewX;
+            int shiftY = bufferViewY - viewY;
+            double deviceShiftX = shiftX * scaleX;
+            double deviceShiftY = shiftY * scaleY;
+            if (!bufferValid || Math.abs(shiftX) >= width || Math.abs(shiftY) >= height
+                    || deviceShiftX != Math.rint(deviceShiftX) || deviceShiftY != Math.rint(deviceShiftY)) {
+                paintBufferArea(graphics, new Rectangle(0, 0, width, height));
+            } else {
+                if (shiftX != 0 || shiftY != 0) {
+                    graphics.copyArea(0, 0, bufferWidth, bufferHeight, (int) deviceShiftX, (int) deviceShiftY);
+                    // Paint the columns and rows that came into view.
+                    if (shiftX > 0) {
+                        paintBufferArea(graphics, new Rectangle(0, 0, shiftX, height));
+                    } else if (shiftX < 0) {
+                        paintBufferArea(graphics, new Rectangle(width + shiftX, 0, -shiftX, height));
+                    }
+                    if (shiftY > 0) {
+                        paintBufferArea(graphics, new Rectangle(0, 0, width, shiftY));
+                    } else if (shiftY < 0) {
+                        paintBufferArea(graphics, new Rectangle(0, height + shiftY, width, -shiftY));
+                    }
+                }
+                Rectangle bufferBounds = new Rectangle(0, 0, width, height);
+                for (Rectangle area : dirtyAreas) {
+                    Rectangle bufferArea = new Rectangle(area.x - viewX, area.y - viewY, area.width, area.height).intersection(bufferBounds);
+                    if (!bufferArea.isEmpty()) {
+                        paintBufferArea(graphics, bufferArea);
+                    }
+                }
+            }
+        } finally {
+            graphics.dispose();
+        }
+        dirtyAreas.clear();
+        bufferValid = true;
+        bufferViewX = viewX;
+        bufferViewY = viewY;
+    }
+    
+    // Paint part of the back buffer (in the coordinates of the view) again.
+    // The area is widened to whole screen pixels, so that the edges of
+    // painted areas don't show when the scale isn't a whole number.
+    private void paintBufferArea(Graphics2D graphics, Rectangle area) {
+        int left = (int) Math.floor(area.x * bufferScaleX);
+        int top = (int) Math.floor(area.y * bufferScaleY);
+        int right = (int) Math.ceil((area.x + area.width) * bufferScaleX);
+        int bottom = (int) Math.ceil((area.y + area.height) * bufferScaleY);
+        graphics.setTransform(new AffineTransform());
+        graphics.setClip(left, top, right - left, bottom - top);
+        graphics.setColor(getBackground());
+        graphics.fillRect(left, top, right - left, bottom - top);
+        graphics.scale(bufferScaleX, bufferScaleY);
+        paintContents(graphics);
+    }
+    
+    // Paint the relations and panels in the area of the graphics' clip, with
+    // (viewX, viewY) at the top left of the graphics. The background isn't
+    // painted.
+    private void paintContents(Graphics graphics) {
         Settings settings = Settings.getInstance();
         Graphics2D graphics2d = (Graphics2D) graphics;
         graphics2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
         float zoomRatio = fontSize / settings.getBaseFontSize();
         float strokeWidth = zoomRatio * BASE_ARROW_LINE_WIDTH;
         Stroke defaultStroke = graphics2d.getStroke();
-        Stroke solidStroke = new BasicStroke(strokeWidth);
-        Stroke dashedStroke = new BasicStroke(strokeWidth, BasicStroke.CAP_BUTT, BasicStroke.JOIN_BEVEL, 0, new float[] {zoomRatio * 9.0f}, 0);
+        Object strokeControl = graphics2d.getRenderingHint(RenderingHints.KEY_STROKE_CONTROL);
+        float dashLength = zoomRatio * 9.0f;
+        if (solidStroke == null || strokeFontSize != fontSize) {
+            solidStroke = new BasicStroke(strokeWidth);
+            dashedStroke = new BasicStroke(strokeWidth, BasicStroke.CAP_BUTT, BasicStroke.JOIN_BEVEL, 0, new float[] {dashLength}, 0);
+            strokeFontSize = fontSize;
+        }
         graphics2d.setColor(settings.getColor("diagram-arrow"));
-        for (Relation relation : relations) {
-            Relation.Type relationType = relation.getType();
-            ClassInfo from = relation.getFrom();
-            ClassInfo to = relation.getTo();
-            if (from == to) {
+        // Find the part of the diagram that needs to be painted. Without a clip
+        // (like when exporting), everything is painted.
+        Rectangle clipBounds = graphics.getClipBounds();
+        Rectangle visibleArea = clipBounds == null
+                ? new Rectangle(Integer.MIN_VALUE / 2, Integer.MIN_VALUE / 2, Integer.MAX_VALUE, Integer.MAX_VALUE)
+                : new Rectangle(clipBounds.x + viewX, clipBounds.y + viewY, clipBounds.width, clipBounds.height);
+        // Arrow heads and thick lines can stick out of a relation's bounds a little.
+        int arrowMargin = getArrowMargin();
+        Rectangle relationArea = new Rectangle(visibleArea);
+        relationArea.grow(arrowMargin, arrowMargin);
+        BitSet visibleRelations = relationGrid.query(relationArea);
+        solidLines.reset();
+        dashedLines.reset();
+        filledHeads.reset();
+        for (int relationIndex = visibleRelations.nextSetBit(0); relationIndex >= 0; relationIndex = visibleRelations.nextSetBit(relationIndex + 1)) {
+            if (relations.getFromIndex(relationIndex) == relations.getToIndex(relationIndex)) {
                 continue;
             }
-            int fromIndex = classIndexMap.get(from);
-            int toIndex = classIndexMap.get(to);
-            PositionedImage fromImage = classInfoImages[fromIndex];
-            PositionedImage toImage = classInfoImages[toIndex];
-            Point fromPoint = fromImage.getConnectionPoint(toImage);
-            Point toPoint = toImage.getConnectionPoint(fromImage);
-            switch (relationType) {
+            Arrow arrow = arrows[relationIndex];
+            switch (relations.get(relationIndex).getType()) {
                 case DEPENDENCY:
-                case REALIZATION:
-                    // Dependency and realization (implements) use dashed lines.
-                    graphics2d.setStroke(dashedStroke);
+                    // Dependency uses a dashed line and an open arrow head.
+                    addLine(dashedLines, arrow, relationArea, 2.0 * dashLength);
+                    addOpenHead(solidLines, arrow);
                     break;
-                case ASSOCIATION:
-                case GENERALIZATION:
-                    // Association and generalization (extends) use solid lines.
-                    graphics2d.setStroke(solidStroke);
+                case REALIZATION:
+                    // Realization (implements) uses a dashed line and a filled
+                    // arrow head.
+                    addLine(dashedLines, arrow, relationArea, 2.0 * dashLength);
+                    addFilledHead(filledHeads, arrow);
                     break;
-            }
-            float distance = (float) fromPoint.distance(toPoint);
-            float directionX = (toPoint.x - fromPoint.x) / distance;
-            float directionY = (toPoint.y - fromPoint.y) / distance;
-            float headRadius = zoomRatio * BASE_ARROW_HEAD_RADIUS;
-            Point headCenter = new Point(toPoint.x - (int) (directionX * headRadius), toPoint.y - (int) (directionY * headRadius));
-            int[] arrowHeadPointsX = new int[3];
-            int[] arrowHeadPointsY = new int[3];
-            for (int i = 0; i < 3; ++i) {
-                double angle = Math.PI * 2.0 / 3.0 * (i - 1);
-                double sin = Math.sin(angle);
-                double cos = Math.cos(angle);
-                arrowHeadPointsX[i] = (int) (headCenter.x + headRadius * (directionX * cos - directionY * sin)) - viewX;
-                arrowHeadPointsY[i] = (int) (headCenter.y + headRadius * (directionX * sin + directionY * cos)) - viewY;
-            }
-            graphics2d.drawLine(fromPoint.x - viewX, fromPoint.y - viewY,
-                                toPoint.x - viewX - (int) (directionX * strokeWidth), toPoint.y - viewY - (int) (directionY * strokeWidth));
-            switch (relationType) {
-                case DEPENDENCY:
                 case ASSOCIATION:
-                    graphics2d.setStroke(solidStroke);
-                    for (int i = 0; i < 2; ++i) {
-                        graphics2d.drawLine(arrowHeadPointsX[i], arrowHeadPointsY[i], arrowHeadPointsX[i + 1], arrowHeadPointsY[i + 1]);
-                    }
+                    // Association uses a solid line and an open arrow head.
+                    addLine(solidLines, arrow, relationArea, 0.0);
+                    addOpenHead(solidLines, arrow);
                     break;
                 case GENERALIZATION:
-                case REALIZATION:
-                    graphics2d.fillPolygon(arrowHeadPointsX, arrowHeadPointsY, 3);
+                    // Generalization (extends) uses a solid line and a filled
+                    // arrow head.
+                    addLine(solidLines, arrow, relationArea, 0.0);
+                    addFilledHead(filledHeads, arrow);
                     break;
             }
         }
+        // The lines aren't normalized, since that would move the ends of the
+        // lines that are cut off to other pixels, and so turn each line a
+        // little differently depending on where the view is.
+        graphics2d.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE);
+        graphics2d.setStroke(solidStroke);
+        graphics2d.draw(solidLines);
+        graphics2d.setStroke(dashedStroke);
+        graphics2d.draw(dashedLines);
+        graphics2d.fill(filledHeads);
+        graphics2d.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, strokeControl);
         graphics2d.setStroke(defaultStroke);
-        for (PositionedImage positionedImage : classInfoImages) {
-            graphics2d.drawImage(positionedImage.getImage(),
-                                 positionedImage.x - positionedImage.width / 2 - viewX,
-                                 positionedImage.y - positionedImage.height / 2 - viewY,
-                                 null);
+        BitSet visiblePanels = panelGrid.query(visibleArea);
+        for (int i = visiblePanels.nextSetBit(0); i >= 0; i = visiblePanels.nextSetBit(i + 1)) {
+            PositionedImage positionedImage = classInfoImages[i];
+            int left = positionedImage.x - positionedImage.width / 2 - viewX;
+            int top = positionedImage.y - positionedImage.height / 2 - viewY;
+            Image image = positionedImage.getImage();
+            if (image == null) {
+                // Panels that are too small to show any text have no image.
+                ClassInfoPainter.paintBox(graphics2d, fontSize, left, top, positionedImage.width, positionedImage.height);
+            } else {
+                // The image is scaled if it was painted for a different font size.
+                graphics2d.drawImage(image, left, top, positionedImage.width, positionedImage.height, null);
+            }
         }
     }
     
     public boolean exportPng(File outputFile) throws IOException {
         Settings settings = Settings.getInstance();
+        // Don't export images that are still being painted for the current font size.
+        cancelRasterization();
+        rasterizeAll();
         // Back-up the view.
         Point oldView = new Point(viewX, viewY);
         // Measure the diagram.
-        Point topLeft = new Point(Integer.MAX_VALUE, Integer.MAX_VALUE);
-        Point bottomRight = new Point(Integer.MIN_VALUE, Integer.MIN_VALUE);
-        for (PositionedImage image : classInfoImages) {
-            int width = image.width;
-            int height = image.height;
-            topLeft.x = Math.min(image.x - width / 2, topLeft.x);
-            topLeft.y = Math.min(image.y - height / 2, topLeft.y);
-            // Adding it and then subtracting half ensures that rounding errors
-            // don't occur even with odd dimensions.
-            bottomRight.x = Math.max(image.x + width - width / 2, bottomRight.x);
-            bottomRight.y = Math.max(image.y + height - height / 2, bottomRight.y);
-        }
-        if (topLeft.x == Integer.MAX_VALUE) {
-            topLeft.x = 0;
-            topLeft.y = 0;
-            bottomRight.x = 0;
-            bottomRight.y = 0;
+        Rectangle[] panelBounds = new Rectangle[classInfoImages.length];
+        for (int i = 0; i < panelBounds.length; ++i) {
+            panelBounds[i] = classInfoImages[i].getBounds();
         }
-        // Measure diagram.
-        int diagramWidth = bottomRight.x - topLeft.x;
-        int diagramHeight = bottomRight.y - topLeft.y;
+        Rectangle diagramBounds = getDiagramBounds(panelBounds);
+        Point topLeft = diagramBounds.getLocation();
+        int diagramWidth = diagramBounds.width;
+        int diagramHeight = diagramBounds.height;
         if (diagramWidth > 0 && diagramHeight > 0) {
-            // Move view to top left of diagram.
-            viewX = topLeft.x;
-            viewY = topLeft.y;
-            // Create graphics and paint diagram.
-            BufferedImage image = new BufferedImage(diagramWidth, diagramHeight, BufferedImage.TYPE_INT_RGB);
-            Graphics graphics = image.getGraphics();
-            // Draw background.
-            graphics.setColor(settings.getColor("diagram-background"));
-            graphics.fillRect(0, 0, diagramWidth, diagramHeight);
-            // Draw contents.
-            paint(graphics);
-            image.flush();
-            graphics.dispose();
-            // Write image to file.
-            ImageIO.write(image, "png", outputFile);
-            // Restore view from backup.
-            viewX = oldView.x;
-            viewY = oldView.y;
+            // Paint the diagram in strips of at most EXPORT_STRIP_PIXELS
+            // pixels, and write each strip to the file before painting the
+            // next one, so that large diagrams fit in memory.
+            int stripHeight = (int) Math.max(Math.min(EXPORT_STRIP_PIXELS / diagramWidth, diagramHeight), 1);
+            BufferedImage image = new BufferedImage(diagramWidth, stripHeight, BufferedImage.TYPE_INT_RGB);
+            int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+            // Write to a temporary file next to the output file, which only
+            // replaces it once the whole image was written, so that an export
+            // that fails doesn't leave a broken image behind.
+            File tempFile = File.createTempFile(outputFile.getName(), ".tmp", outputFile.getAbsoluteFile().getParentFile());
+            boolean written = false;
+            try {
+                try (PngStripWriter writer = new PngStripWriter(new BufferedOutputStream(new FileOutputStream(tempFile)), diagramWidth, diagramHeight)) {
+                    for (int stripY = 0; stripY < diagramHeight; stripY += stripHeight) {
+                        // Move the view to the top left of the strip.
+                        viewX = topLeft.x;
+                        viewY = topLeft.y + stripY;
+                        Graphics graphics = image.getGraphics();
+                        // Only the panels and relations in the strip are painted.
+                        graphics.setClip(0, 0, diagramWidth, stripHeight);
+                        // Draw background.
+                        graphics.setColor(settings.getColor("diagram-background"));
+                        graphics.fillRect(0, 0, diagramWidth, stripHeight);
+                        // Draw contents.
+                        paintContents(graphics);
+                        graphics.dispose();
+                        writer.writeRows(pixels, 0, diagramWidth, Math.min(stripHeight, diagramHeight - stripY));
+                    }
+                }
+                Files.move(tempFile.toPath(), outputFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                written = true;
+            } finally {
+                // Restore view from backup.
+                viewX = oldView.x;
+                viewY = oldView.y;
+                if (!written) {
+                    tempFile.delete();
+                }
+            }
             return true;
         }
         return false;
     }
     
+    // Export the diagram as an SVG image. The panels and relations are written
+    // as shapes and text one at a time, without painting the diagram, so the
+    // size of the file and the time it takes depend on the number of classes
+    // and not on the size of the diagram. Returns false if the diagram is
+    // empty.
+    public boolean exportSvg(File outputFile) throws IOException {
+        Settings settings = Settings.getInstance();
+        float zoomRatio = fontSize / settings.getBaseFontSize();
+        float strokeWidth = zoomRatio * BASE_ARROW_LINE_WIDTH;
+        float headRadius = zoomRatio * BASE_ARROW_HEAD_RADIUS;
+        Color arrowColor = settings.getColor("diagram-arrow");
+        // Measure the panels at the current font size, since their images may
+        // still be scaled versions of images for another font size.
+        Rectangle[] panelBounds = new Rectangle[classPainters.length];
+        for (int i = 0; i < panelBounds.length; ++i) {
+            Dimension size = classPainters[i].getSize(fontSize);
+            PositionedImage image = classInfoImages[i];
+            panelBounds[i] = new Rectangle(image.x - size.width / 2, image.y - size.height / 2, size.width, size.height);
+        }
+        Rectangle diagramBounds = getDiagramBounds(panelBounds);
+        if (diagramBounds.width <= 0 || diagramBounds.height <= 0) {
+            return false;
+        }
+        try (SvgWriter svg = new SvgWriter(new BufferedOutputStream(new FileOutputStream(outputFile)), diagramBounds)) {
+            // Draw background.
+            svg.fillRect(diagramBounds.x, diagramBounds.y, diagramBounds.width, diagramBounds.height, settings.getColor("diagram-background"));
+            // Draw the relations below the panels, like paint does.
+            Arrow arrow = new Arrow();
+            for (int relationIndex = 0, numRelations = relations.size(); relationIndex < numRelations; ++relationIndex) {
+                Relation.Type relationType = relations.get(relationIndex).getType();
+                int fromIndex = relations.getFromIndex(relationIndex);
+                int toIndex = relations.getToIndex(relationIndex);
+                if (fromIndex == toIndex) {
+                    continue;
+                }
+                Point fromPoint = PositionedImage.getConnectionPoint(panelBounds[fromIndex], panelBounds[toIndex]);
+                Point toPoint = PositionedImage.getConnectionPoint(panelBounds[toIndex], panelBounds[fromIndex]);
+                if (fromPoint == null || toPoint == null) {
+                    continue;
+                }
+                arrow.set(fromPoint, toPoint, headRadius, strokeWidth);
+                // Dependency and realization (implements) use dashed lines.
+                boolean dashed = relationType == Relation.Type.DEPENDENCY || relationType == Relation.Type.REALIZATION;
+                svg.drawLine(arrow.fromX, arrow.fromY, arrow.toX, arrow.toY, arrowColor, strokeWidth, dashed ? zoomRatio * 9.0f : 0.0f);
+                switch (relationType) {
+                    case DEPENDENCY:
+                    case ASSOCIATION:
+                        svg.drawPolyline(arrow.headPointsX, arrow.headPointsY, 3, arrowColor, strokeWidth);
+                        break;
+                    case GENERALIZATION:
+                    case REALIZATION:
+                        svg.fillPolygon(arrow.headPointsX, arrow.headPointsY, 3, arrowColor);
+                        break;
+                }
+            }
+            for (int i = 0; i < classPainters.length; ++i) {
+                classPainters[i].writeSvg(svg, fontSize, panelBounds[i].x, panelBounds[i].y);
+            }
+        }
+        return true;
+    }
+    
+    // Return the area that contains all the panels, or an empty rectangle at
+    // (0, 0) if there are no panels.
+    private static Rectangle getDiagramBounds(Rectangle[] panelBounds) {
+        if (panelBounds.length == 0) {
+            return new Rectangle();
+        }
+        int left = Integer.MAX_VALUE;
+        int top = Integer.MAX_VALUE;
+        int right = Integer.MIN_VALUE;
+        int bottom = Integer.MIN_VALUE;
+        for (Rectangle bounds : panelBounds) {
+            left = Math.min(bounds.x, left);
+            top = Math.min(bounds.y, top);
+            right = Math.max(bounds.x + bounds.width, right);
+            bottom = Math.max(bounds.y + bounds.height, bottom);
+        }
+        return new Rectangle(left, top, right - left, bottom - top);
+    }
+    
+    // Add the part of the line of an arrow that lies in an area to a path, in
+    // the coordinates of the view. Java2D doesn't always paint the same pixels
+    // for a long line that starts far outside the clip when it's painted from
+    // another view, which would leave seams where the back buffer or an
+    // exported image is painted in parts, so the line is cut off at the edges
+    // of the area (which are far enough outside the clip to hide the cut
+    // ends). The dashes of a dashed line start over at the cut, so the cut is
+    // moved back to the start of a period of dashes (of length dashPeriod, or
+    // 0 for solid lines), to keep the dashes where they are on the whole line.
+    private void addLine(Path2D.Double path, Arrow arrow, Rectangle area, double dashPeriod) {
+        double deltaX = arrow.toX - arrow.fromX;
+        double deltaY = arrow.toY - arrow.fromY;
+        linePart[0] = 0.0;
+        linePart[1] = 1.0;
+        if (!clipLine(linePart, arrow.fromX, deltaX, area.x, (double) area.x + area.width)
+                || !clipLine(linePart, arrow.fromY, deltaY, area.y, (double) area.y + area.height)) {
+            return;
+        }
+        double start = linePart[0];
+        if (dashPeriod > 0.0 && start > 0.0) {
+            double length = Math.hypot(deltaX, deltaY);
+            start -= start * length % dashPeriod / length;
+        }
+        path.moveTo(arrow.fromX + start * deltaX - viewX, arrow.fromY + start * deltaY - viewY);
+        path.lineTo(arrow.fromX + linePart[1] * deltaX - viewX, arrow.fromY + linePart[1] * deltaY - viewY);
+    }
+    
+    // Narrow the part of a line (as the fractions of the way along it where
+    // the part starts and ends) to where it lies between min and max along
+    // one axis, given where the line starts and how far it goes along that
+    // axis. Return false if no part of the line is left.
+    private static boolean clipLine(double[] linePart, double position, double delta, double min, double max) {
+        if (delta == 0.0) {
+            // The line is parallel to the edges.
+            return min <= position && position <= max;
+        }
+        double minCrossing = (min - position) / delta;
+        double maxCrossing = (max - position) / delta;
+        linePart[0] = Math.max(linePart[0], Math.min(minCrossing, maxCrossing));
+        linePart[1] = Math.min(linePart[1], Math.max(minCrossing, maxCrossing));
+        return linePart[0] <= linePart[1];
+    }
+    
+    // Add the two sides of an open arrow head to a path, in the coordinates
+    // of the view. They're added as separate lines, so that the tip isn't
+    // joined into a long point.
+    private void addOpenHead(Path2D.Double path, Arrow arrow) {
+        for (int i = 0; i < 2; ++i) {
+            path.moveTo(arrow.headPointsX[i] - viewX, arrow.headPointsY[i] - viewY);
+            path.lineTo(arrow.headPointsX[i + 1] - viewX, arrow.headPointsY[i + 1] - viewY);
+        }
+    }
+    
+    // Add a filled arrow head to a path, in the coordinates of the view.
+    private void addFilledHead(Path2D.Double path, Arrow arrow) {
+        path.moveTo(arrow.headPointsX[0] - viewX, arrow.headPointsY[0] - viewY);
+        path.lineTo(arrow.headPointsX[1] - viewX, arrow.headPointsY[1] - viewY);
+        path.lineTo(arrow.headPointsX[2] - viewX, arrow.headPointsY[2] - viewY);
+        path.closePath();
+    }
+    
+    // A force-directed layout of copies of the panels, so that it can be
+    // arranged on another thread while the diagram is still used.
+    public class PendingLayout {
+        
+        private final PositionedImage[] panels;
+        private final ForceDirectedLayout layout;
+        // Font size and layout count of the diagram when the layout was
+        // prepared.
+        private final float layoutFontSize;
+        private final int layoutId;
+        
+        private PendingLayout(long seed) {
+            layoutId = ++layoutCount;
+            layoutFontSize = fontSize;
+            panels = new PositionedImage[classInfoImages.length];
+            for (int i = 0; i < panels.length; ++i) {
+                PositionedImage image = classInfoImages[i];
+                panels[i] = new PositionedImage(null, image.x, image.y);
+                panels[i].width = image.width;
+                panels[i].height = image.height;
+            }
+            float zoomRatio = fontSize / Settings.getInstance().getBaseFontSize();
+            int spacing = Math.max((int) (BASE_PANEL_SPACING * zoomRatio + 0.5f), 1);
+            int[][] neighbors = getPanelNeighbors();
+            // The strength of each relation, in the same order as the neighbors.
+            float[][] strengths = new float[neighbors.length][];
+            for (int i = 0; i < strengths.length; ++i) {
+                int[] relationIndices = relations.getIncident(i);
+                strengths[i] = new float[relationIndices.length];
+                for (int j = 0; j < relationIndices.length; ++j) {
+                    strengths[i][j] = relations.get(relationIndices[j]).getStrength();
+                }
+            }
+            layout = new ForceDirectedLayout(panels, neighbors, strengths, spacing, seed);
+        }
+        
+        // Compute the positions of the panels. Can be called on any thread.
+        public void arrange() {
+            layout.arrange();
+        }
+        
+        // Move the panels to the computed positions (scaled along if the
+        // diagram was zoomed in the meantime), and move the view to the top
+        // left of the diagram. Does nothing if another layout was started
+        // after this one. Returns whether the panels were moved.
+        public boolean apply() {
+            if (layoutId != layoutCount) {
+                return false;
+            }
+            float zoomRatio = fontSize / layoutFontSize;
+            for (int i = 0; i < panels.length; ++i) {
+                classInfoImages[i].x = Math.round(panels[i].x * zoomRatio);
+                classInfoImages[i].y = Math.round(panels[i].y * zoomRatio);
+            }
+            rebuildSpatialIndex();
+            moveViewToTopLeft();
+            repaint();
+            return true;
+        }
+    }
+    
+    // Line and arrow head of a relation between two panels, in the
+    // coordinates of the diagram. The line ends a little before the point of
+    // the arrow head, so that the thick line doesn't stick out of it. The
+    // arrows of the relations are kept and set again when a panel moves, so
+    // that painting doesn't create any.
+    private static class Arrow {
+        
+        private int fromX, fromY;
+        private int toX, toY;
+        private final int[] headPointsX;
+        private final int[] headPointsY;
+        
+        Arrow() {
+            headPointsX = new int[3];
+            headPointsY = new int[3];
+        }
+        
+        // Point the arrow from one point to another.
+        void set(Point fromPoint, Point toPoint, float headRadius, float strokeWidth) {
+            float distance = (float) fromPoint.distance(toPoint);
+            float directionX = (toPoint.x - fromPoint.x) / distance;
+            float directionY = (toPoint.y - fromPoint.y) / distance;
+            int headCenterX = toPoint.x - (int) (directionX * headRadius);
+            int headCenterY = toPoint.y - (int) (directionY * headRadius);
+            for (int i = 0; i < 3; ++i) {
+                double angle = Math.PI * 2.0 / 3.0 * (i - 1);
+                double sin = Math.sin(angle);
+                double cos = Math.cos(angle);
+                headPointsX[i] = (int) (headCenterX + headRadius * (directionX * cos - directionY * sin));
+                headPointsY[i] = (int) (headCenterY + headRadius * (directionX * sin + directionY * cos));
+            }
+            fromX = fromPoint.x;
+            fromY = fromPoint.y;
+            toX = toPoint.x - (int) (directionX * strokeWidth);
+            toY = toPoint.y - (int) (directionY * strokeWidth);
+        }
+    }
+    
     // Scrolling and dragging.
     private int prevMouseX, prevMouseY;
     private boolean draggingAnImage;
-    private PositionedImage dragTarget;
+    private int dragIndex;
 
     @Override
     public void mousePressed(MouseEvent event) {
         // Store current mouse position as previous position.
         prevMouseX = event.getX();
         prevMouseY = event.getY();
-        dragTarget = null;
+        dragIndex = -1;
         // If shift is held down when clicking, then drag a panel instead of scrolling.
         draggingAnImage = event.isShiftDown();
         if (draggingAnImage) {
             // Calculate virtual mouse position according to view.
             int x = prevMouseX + viewX;
             int y = prevMouseY + viewY;
-            // Look for panels that the mouse is over.
-            for (int i = classInfoImages.length - 1; i >= 0; --i) {
-                PositionedImage image = classInfoImages[i];
-                if (image.getBounds().contains(x, y)) {
-                    dragTarget = image;
+            // Look for panels that the mouse is over, starting with the one
+            // that is painted last (on top).
+            BitSet panels = panelGrid.query(new Rectangle(x, y, 1, 1));
+            for (int i = panels.length() - 1; i >= 0; i = panels.previousSetBit(i - 1)) {
+                if (classInfoImages[i].getBounds().contains(x, y)) {
+                    dragIndex = i;
                     break;
                 }
             }
-            draggingAnImage = dragTarget != null;
+            draggingAnImage = dragIndex >= 0;
         }
     }
     
@@ -384,11 +1238,17 @@ public class JavaClassDiagram extends JPanel implements MouseListener, MouseMoti
         int deltaX = mouseX - prevMouseX;
         int deltaY = mouseY - prevMouseY;
         if (draggingAnImage) {
-            // Move the selected panel.
+            // Move the selected panel. Only the area that it leaves and the
+            // area that it moves to are painted again, with its relations.
+            PositionedImage dragTarget = classInfoImages[dragIndex];
+            invalidatePanel(dragIndex);
             dragTarget.x += deltaX;
             dragTarget.y += deltaY;
+            updatePanelBounds(dragIndex);
+            invalidatePanel(dragIndex);
         } else {
-            // Move the view.
+            // Move the view. The part of the diagram that stays in view is
+            // moved in the back buffer, so only the rest is painted.
             viewX -= deltaX;
             viewY -= deltaY;
         }
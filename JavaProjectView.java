@@ -1,23 +1,37 @@
 package javaprojectview;
 
+import java.awt.BorderLayout;
+import java.awt.Cursor;
 import java.awt.Dimension;
 import java.awt.EventQueue;
 import java.awt.event.ActionEvent;
 import java.awt.event.KeyEvent;
 import java.io.File;
 import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javaprojectview.parser.ClassInfo;
-import javaprojectview.parser.JavaParser;
+import javaprojectview.parser.LoadListener;
+import javaprojectview.parser.ParseCache;
+import javaprojectview.parser.ParseSession;
+import javaprojectview.uml.DiagramBuildListener;
 import javaprojectview.uml.JavaClassDiagram;
+import javax.swing.BorderFactory;
+import javax.swing.JButton;
 import javax.swing.JFileChooser;
 import javax.swing.JFrame;
+import javax.swing.JLabel;
 import javax.swing.JMenu;
 import javax.swing.JMenuBar;
 import javax.swing.JMenuItem;
 import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JProgressBar;
 import javax.swing.KeyStroke;
+import javax.swing.SwingWorker;
 import javax.swing.UIManager;
 import javax.swing.UnsupportedLookAndFeelException;
 import javax.swing.filechooser.FileNameExtensionFilter;
@@ -27,13 +41,32 @@ public class JavaProjectView extends JFrame {
     private static final String PROGRAM_TITLE = "Java Project View";
     
     private final FileNameExtensionFilter pngImageFilenameFilter;
+    private final FileNameExtensionFilter svgImageFilenameFilter;
     private final JFileChooser fileChooser;
+    // Remembers the parsed files, so reloading only parses the changed files.
+    // Parsed files are also cached on disk to speed up the next start.
+    private final ParseSession parseSession;
     
     private JavaClassDiagram classDiagram;
+    // Loads the files and builds the next diagram in the background, or null
+    // if nothing is being loaded.
+    private DiagramLoader diagramLoader;
+    // Computes a force-directed layout in the background, or null if no
+    // layout is being computed.
+    private SwingWorker<Void, Void> layoutWorker;
+    
+    private JMenuItem chooseFiles;
+    private JMenuItem reload;
+    // Shows the progress of the diagram loader, only while it's running.
+    private JPanel statusBar;
+    private JLabel statusLabel;
+    private JProgressBar progressBar;
     
     public JavaProjectView() {
         pngImageFilenameFilter = new FileNameExtensionFilter("PNG Image", "png");
+        svgImageFilenameFilter = new FileNameExtensionFilter("SVG Image", "svg");
         fileChooser = new JFileChooser();
+        parseSession = new ParseSession(new ParseCache(ParseCache.getDefaultDirectory()));
         initComponents();
         chooseFilesActionPerformed();
     }
@@ -42,25 +75,57 @@ public class JavaProjectView extends JFrame {
         Settings settings = Settings.getInstance();
         JMenuBar menuBar = new JMenuBar();
         JMenu fileMenu = new JMenu("File");
-        JMenuItem chooseFiles = new JMenuItem("Choose files...");
+        chooseFiles = new JMenuItem("Choose files...");
         chooseFiles.addActionListener((ActionEvent e) -> {
             chooseFilesActionPerformed();
         });
         chooseFiles.setMnemonic('C');
         chooseFiles.setAccelerator(KeyStroke.getKeyStroke('C', KeyEvent.CTRL_DOWN_MASK));
+        reload = new JMenuItem("Reload");
+        reload.addActionListener((ActionEvent e) -> {
+            reloadActionPerformed();
+        });
+        reload.setMnemonic('R');
+        reload.setAccelerator(KeyStroke.getKeyStroke('R', KeyEvent.CTRL_DOWN_MASK));
         JMenuItem exportPng = new JMenuItem("Export PNG...");
         exportPng.addActionListener((ActionEvent e) -> {
             exportPngActionPerformed();
         });
         exportPng.setMnemonic('E');
         exportPng.setAccelerator(KeyStroke.getKeyStroke('E', KeyEvent.CTRL_DOWN_MASK));
+        JMenuItem exportSvg = new JMenuItem("Export SVG...");
+        exportSvg.addActionListener((ActionEvent e) -> {
+            exportSvgActionPerformed();
+        });
+        exportSvg.setMnemonic('S');
         JMenuItem exit = new JMenuItem("Exit");
         exit.addActionListener((ActionEvent e) -> {
             exitActionPerformed();
         });
         fileMenu.add(chooseFiles);
+        fileMenu.add(reload);
         fileMenu.add(exportPng);
+        fileMenu.add(exportSvg);
         fileMenu.add(exit);
+        JMenu layoutMenu = new JMenu("Layout");
+        JMenuItem packedLayout = new JMenuItem("Packed");
+        packedLayout.addActionListener((ActionEvent e) -> {
+            packedLayoutActionPerformed();
+        });
+        packedLayout.setMnemonic('P');
+        JMenuItem forceLayout = new JMenuItem("Force-directed");
+        forceLayout.addActionListener((ActionEvent e) -> {
+            forceLayoutActionPerformed();
+        });
+        forceLayout.setMnemonic('F');
+        JMenuItem hierarchyLayout = new JMenuItem("Hierarchy");
+        hierarchyLayout.addActionListener((ActionEvent e) -> {
+            hierarchyLayoutActionPerformed();
+        });
+        hierarchyLayout.setMnemonic('H');
+        layoutMenu.add(packedLayout);
+        layoutMenu.add(forceLayout);
+        layoutMenu.add(hierarchyLayout);
         JMenu helpMenu = new JMenu("Help");
         JMenuItem showUsage = new JMenuItem("Show usage help");
         showUsage.addActionListener((ActionEvent e) -> {
@@ -69,7 +134,21 @@ public class JavaProjectView extends JFrame {
         showUsage.setMnemonic('U');
         helpMenu.add(showUsage);
         menuBar.add(fileMenu);
+        menuBar.add(layoutMenu);
         menuBar.add(helpMenu);
+        statusLabel = new JLabel();
+        progressBar = new JProgressBar();
+        JButton cancelLoad = new JButton("Cancel");
+        cancelLoad.addActionListener((ActionEvent e) -> {
+            cancelLoadActionPerformed();
+        });
+        statusBar = new JPanel(new BorderLayout(8, 0));
+        statusBar.setBorder(BorderFactory.createEmptyBorder(4, 8, 4, 8));
+        statusBar.add(statusLabel, BorderLayout.WEST);
+        statusBar.add(progressBar, BorderLayout.CENTER);
+        statusBar.add(cancelLoad, BorderLayout.EAST);
+        statusBar.setVisible(false);
+        add(statusBar, BorderLayout.SOUTH);
         setLocationRelativeTo(null);
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         pack();
@@ -83,51 +162,121 @@ public class JavaProjectView extends JFrame {
         fileChooser.setFileSelectionMode(JFileChooser.FILES_AND_DIRECTORIES);
         fileChooser.setFileFilter(null);
         if (fileChooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
-            JavaParser parser = new JavaParser();
-            try {
-                for (File file : fileChooser.getSelectedFiles()) {
-                    // Parse all the selected files.
-                    parser.parseFile(file);
-                }
-            } catch (IOException ex) {
-                Logger.getLogger(JavaProjectView.class.getName()).log(Level.SEVERE, null, ex);
+            // Parse all the selected files. Files that were parsed before are
+            // only parsed again if they changed.
+            startLoading(fileChooser.getSelectedFiles());
+        }
+    }
+    
+    private void reloadActionPerformed() {
+        // Parse the files that changed since they were loaded.
+        startLoading(null);
+    }
+    
+    private void cancelLoadActionPerformed() {
+        if (diagramLoader != null) {
+            // The loader stops at the next file or step, and is only done
+            // then.
+            diagramLoader.cancel(false);
+            statusLabel.setText("Cancelling...");
+        }
+    }
+    
+    // Load files (or the same files again if 'roots' is null) and build their
+    // diagram in the background. The menu items that load files are disabled
+    // until it's done, since the parse session can only load one set of files
+    // at a time.
+    private void startLoading(File[] roots) {
+        if (diagramLoader != null) {
+            return;
+        }
+        chooseFiles.setEnabled(false);
+        reload.setEnabled(false);
+        statusLabel.setText("Finding files...");
+        progressBar.setIndeterminate(true);
+        statusBar.setVisible(true);
+        validate();
+        diagramLoader = new DiagramLoader(roots);
+        diagramLoader.execute();
+    }
+    
+    // Called when the diagram loader has stopped working and its diagram (if
+    // any) is shown, whether it succeeded or not.
+    private void loadingFinished() {
+        diagramLoader = null;
+        chooseFiles.setEnabled(true);
+        reload.setEnabled(true);
+        statusBar.setVisible(false);
+        validate();
+    }
+    
+    // Replace the diagram with a new one.
+    private void showClassDiagram(JavaClassDiagram newDiagram) {
+        // Remove the old diagram.
+        if (classDiagram != null) {
+            remove(classDiagram);
+        }
+        classDiagram = newDiagram;
+        add(classDiagram, BorderLayout.CENTER);
+        Dimension size = getSize();
+        pack();
+        setSize(size);
+    }
+    
+    private void packedLayoutActionPerformed() {
+        if (classDiagram != null) {
+            classDiagram.autoSort();
+            classDiagram.repaint();
+        }
+    }
+    
+    // Compute a force-directed layout on a worker thread, since it takes a
+    // few seconds for thousands of panels, and then move the panels on the
+    // event dispatch thread. The diagram can be used in the meantime; if it's
+    // laid out in another way first, the result is dropped.
+    private void forceLayoutActionPerformed() {
+        if (classDiagram == null || layoutWorker != null) {
+            return;
+        }
+        JavaClassDiagram diagram = classDiagram;
+        // Use a fixed seed, so the same files always give the same diagram.
+        JavaClassDiagram.PendingLayout layout = diagram.prepareForceDirectedLayout(0L);
+        diagram.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+        layoutWorker = new SwingWorker<Void, Void>() {
+            @Override
+            protected Void doInBackground() {
+                layout.arrange();
+                return null;
             }
-            // Remove the old diagram.
-            if (classDiagram != null) {
-                remove(classDiagram);
+            
+            @Override
+            protected void done() {
+                layoutWorker = null;
+                diagram.setCursor(null);
+                try {
+                    get();
+                    layout.apply();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException ex) {
+                    Logger.getLogger(JavaProjectView.class.getName()).log(Level.SEVERE, null, ex.getCause());
+                    showErrorMessage("An error occured while arranging the panels.");
+                }
             }
-            ClassInfo[] classes = parser.getClasses();
-            classDiagram = new JavaClassDiagram(classes);
-            classDiagram.autoSort();
-            add(classDiagram);
-            Dimension size = getSize();
-            pack();
-            setSize(size);
+        };
+        layoutWorker.execute();
+    }
+    
+    private void hierarchyLayoutActionPerformed() {
+        if (classDiagram != null) {
+            classDiagram.autoSortHierarchy();
         }
     }
     
     private void exportPngActionPerformed() {
-        fileChooser.setMultiSelectionEnabled(false);
-        fileChooser.setFileSelectionMode(JFileChooser.FILES_ONLY);
-        fileChooser.setFileFilter(pngImageFilenameFilter);
-        if (classDiagram == null) {
-            showErrorMessage("Cannot export without class diagram.");
-        } else if (fileChooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
+        File outputFile = chooseExportFile(pngImageFilenameFilter, ".png");
+        if (outputFile != null) {
             try {
-                File outputFile = fileChooser.getSelectedFile();
-                if (!outputFile.getName().toLowerCase().endsWith(".png")) {
-                    outputFile = new File(outputFile.getPath() + ".png");
-                }
-                if (outputFile.exists()) {
-                    if (JOptionPane.showConfirmDialog(
-                            this,
-                            "A file with that name already exists. Do you want to overwrite it?",
-                            PROGRAM_TITLE + " - Overwrite?",
-                            JOptionPane.YES_NO_CANCEL_OPTION,
-                            JOptionPane.WARNING_MESSAGE) != JOptionPane.YES_OPTION) {
-                        return;
-                    }
-                }
                 if (classDiagram.exportPng(outputFile)) {
                     showMessage("The diagram has been successfully exported as a PNG image.\nNote that the font size in the exported image depends on the current font size (zoom in to increase).", "Export Successful");
                 } else {
@@ -139,6 +288,49 @@ public class JavaProjectView extends JFrame {
         }
     }
     
+    private void exportSvgActionPerformed() {
+        File outputFile = chooseExportFile(svgImageFilenameFilter, ".svg");
+        if (outputFile != null) {
+            try {
+                if (classDiagram.exportSvg(outputFile)) {
+                    showMessage("The diagram has been successfully exported as an SVG image.", "Export Successful");
+                } else {
+                    showErrorMessage("Cannot export empty diagram.");
+                }
+            } catch (IOException ex) {
+                showErrorMessage("An error occured while saving the image.");
+            }
+        }
+    }
+    
+    // Ask for the file to export the diagram to, adding the extension if it's
+    // missing. Returns null if there is no diagram, or if the user cancels.
+    private File chooseExportFile(FileNameExtensionFilter filter, String extension) {
+        fileChooser.setMultiSelectionEnabled(false);
+        fileChooser.setFileSelectionMode(JFileChooser.FILES_ONLY);
+        fileChooser.setFileFilter(filter);
+        if (classDiagram == null) {
+            showErrorMessage("Cannot export without class diagram.");
+        } else if (fileChooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
+            File outputFile = fileChooser.getSelectedFile();
+            if (!outputFile.getName().toLowerCase().endsWith(extension)) {
+                outputFile = new File(outputFile.getPath() + extension);
+            }
+            if (outputFile.exists()) {
+                if (JOptionPane.showConfirmDialog(
+                        this,
+                        "A file with that name already exists. Do you want to overwrite it?",
+                        PROGRAM_TITLE + " - Overwrite?",
+                        JOptionPane.YES_NO_CANCEL_OPTION,
+                        JOptionPane.WARNING_MESSAGE) != JOptionPane.YES_OPTION) {
+                    return null;
+                }
+            }
+            return outputFile;
+        }
+        return null;
+    }
+    
     private void exitActionPerformed() {
         System.exit(0);
     }
@@ -148,7 +340,11 @@ public class JavaProjectView extends JFrame {
                   + "Click and drag inside the window to view different parts of the diagram.\n"
                   + "Use the mouse wheel to zoom in or out.\n\n"
                   + "Hold shift while dragging with your mouse on a panel to move it.\n"
-                  + "Use 'File > Export PNG...' to export the entire diagram as an image.\n\n"
+                  + "Use the 'Layout' menu to arrange the panels again: packed closely together,\n"
+                  + "pulled together along their relations (force-directed), or in layers with\n"
+                  + "every class below the classes it extends or implements (hierarchy).\n"
+                  + "Use 'File > Export PNG...' to export the entire diagram as an image,\n"
+                  + "or 'File > Export SVG...' to export it as a vector image of any size.\n\n"
                   + "Tip 1: Zoom out and drag panels around to sort them to your liking.\n"
                   + "Tip 2: Zoom in before using 'Export PNG' for a higher resolution!\n", "Usage Help");
     }
@@ -163,6 +359,122 @@ public class JavaProjectView extends JFrame {
         JOptionPane.showMessageDialog(this, message, PROGRAM_TITLE + " - Error", JOptionPane.ERROR_MESSAGE);
     }
     
+    // Loads files into the parse session and builds the diagram of their
+    // classes on a worker thread, so the window keeps responding. Only the
+    // diagram component itself is created on the event dispatch thread. The
+    // steps are shown in the status bar, and the new diagram replaces the old
+    // one on the event dispatch thread once it's completely built. If loading
+    // fails or is cancelled, the old diagram stays. When it's cancelled while
+    // the diagram is built, the parse session already holds the new files.
+    private class DiagramLoader extends SwingWorker<JavaClassDiagram, String> implements LoadListener, DiagramBuildListener {
+        
+        // Files to load, or null to load the same files again.
+        private final File[] roots;
+        private volatile int numClasses;
+        // Whether doInBackground has returned, and whether done was called for
+        // a cancelled loader. Only used on the event dispatch thread.
+        private boolean stopped;
+        private boolean cancelDone;
+        
+        DiagramLoader(File[] roots) {
+            this.roots = roots;
+        }
+        
+        @Override
+        protected JavaClassDiagram doInBackground() throws IOException, InterruptedException, InvocationTargetException {
+            try {
+                if (roots == null) {
+                    parseSession.reload(this);
+                } else {
+                    parseSession.load(roots, this);
+                }
+                ClassInfo[] classes = parseSession.getClasses();
+                numClasses = classes.length;
+                JavaClassDiagram[] diagram = new JavaClassDiagram[1];
+                EventQueue.invokeAndWait(() -> {
+                    diagram[0] = new JavaClassDiagram(classes, 12.0f);
+                });
+                diagram[0].build(this);
+                return diagram[0];
+            } finally {
+                // When the loader is cancelled, done is called right away, but
+                // the parse session can't load other files before this point.
+                EventQueue.invokeLater(() -> {
+                    stopped = true;
+                    if (cancelDone) {
+                        loadingFinished();
+                    }
+                });
+            }
+        }
+        
+        @Override
+        public void filesFound(int numFiles) {
+            publish("Parsing " + numFiles + " files...");
+        }
+        
+        @Override
+        public void fileLoaded(int numLoadedFiles, int numFiles) {
+            setProgress(numFiles == 0 ? 100 : 100 * numLoadedFiles / numFiles);
+            publish("Parsed " + numLoadedFiles + " of " + numFiles + " files");
+        }
+        
+        @Override
+        public void phaseStarted(String phase) {
+            String classCount = numClasses + " classes: ";
+            switch (phase) {
+                case DiagramBuildListener.RELATIONS:
+                    publish(classCount + "finding relations...");
+                    break;
+                case DiagramBuildListener.RASTERIZATION:
+                    publish(classCount + "painting panels...");
+                    break;
+                case DiagramBuildListener.LAYOUT:
+                    publish(classCount + "arranging panels...");
+                    break;
+            }
+        }
+        
+        @Override
+        protected void process(List<String> messages) {
+            if (diagramLoader != this || isCancelled()) {
+                return;
+            }
+            // Only the latest message is of interest.
+            statusLabel.setText(messages.get(messages.size() - 1));
+            // The files are counted while they're parsed, but the steps of
+            // building the diagram aren't.
+            int progress = getProgress();
+            progressBar.setIndeterminate(progress == 0 || progress == 100);
+            progressBar.setValue(progress);
+        }
+        
+        @Override
+        protected void done() {
+            if (isCancelled()) {
+                // Wait until doInBackground has returned, unless it already
+                // has.
+                cancelDone = true;
+                if (stopped) {
+                    loadingFinished();
+                }
+                return;
+            }
+            // Otherwise doInBackground has already returned, and the new
+            // diagram is shown before the files can be loaded again.
+            try {
+                showClassDiagram(get());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException ex) {
+                Logger.getLogger(JavaProjectView.class.getName()).log(Level.SEVERE, null, ex.getCause());
+                showErrorMessage("An error occured while loading the files.");
+            } finally {
+                loadingFinished();
+            }
+        }
+    }
+    
     public static void main(String[] args) {
         try {
             UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
@@ -0,0 +1,23 @@
+package javaprojectview.parser;
+
+// Receives the progress of ParseSession.load, and can ask it to stop. The
+// methods are called from the thread that loads the files and from the
+// threads that parse them, so they must be thread safe. All methods do
+// nothing by default, so listeners only need to implement what they need.
+public interface LoadListener {
+
+    // Called once the files to load have been found, before any of them is
+    // read.
+    public default void filesFound(int numFiles) {
+    }
+
+    // Called whenever another file has been loaded (or found to be
+    // unchanged). The files don't necessarily finish in order.
+    public default void fileLoaded(int numLoadedFiles, int numFiles) {
+    }
+
+    // Return true to stop loading. The session is then left as it was.
+    public default boolean isCancelled() {
+        return false;
+    }
+}
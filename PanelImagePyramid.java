@@ -0,0 +1,140 @@
+package javaprojectview.graphics;
+
+import java.awt.Image;
+
+// Images of the panels of a diagram at a fixed set of font sizes (the levels),
+// so that after zooming, the image of the nearest level can be shown scaled
+// right away, while the panels are painted at the new font size. Each level
+// only holds the images that were painted at exactly its font size. When the
+// images take up more than a maximum number of bytes, the levels that are
+// furthest from the current font size are thrown away. The pyramid must only
+// be used by one thread (the event dispatch thread).
+public class PanelImagePyramid {
+
+    // Font sizes of the levels, from small to large.
+    private static final float[] LEVEL_FONT_SIZES = {4.0f, 6.0f, 8.0f, 12.0f, 16.0f, 24.0f};
+    // Default maximum number of bytes of pixels in all the levels together.
+    private static final long DEFAULT_MAX_BYTES = 256L << 20;
+    private static final int BYTES_PER_PIXEL = 4;
+
+    // Images by level and then by panel.
+    private final Image[][] images;
+    private final long[] levelBytes;
+    private final long maxBytes;
+
+    public PanelImagePyramid(int numPanels) {
+        this(numPanels, DEFAULT_MAX_BYTES);
+    }
+
+    public PanelImagePyramid(int numPanels, long maxBytes) {
+        images = new Image[LEVEL_FONT_SIZES.length][numPanels];
+        levelBytes = new long[LEVEL_FONT_SIZES.length];
+        this.maxBytes = maxBytes;
+    }
+
+    // Return the level with the given font size, or -1 if there is none.
+    public static int getLevel(float fontSize) {
+        for (int level = 0; level < LEVEL_FONT_SIZES.length; ++level) {
+            if (LEVEL_FONT_SIZES[level] == fontSize) {
+                return level;
+            }
+        }
+        return -1;
+    }
+
+    // Return the level whose font size is closest to the given font size
+    // (relative to the font size, so 6 is as close to 8 as 12 is to 16).
+    public static int getClosestLevel(float fontSize) {
+        int closestLevel = 0;
+        for (int level = 1; level < LEVEL_FONT_SIZES.length; ++level) {
+            if (getDistance(LEVEL_FONT_SIZES[level], fontSize) < getDistance(LEVEL_FONT_SIZES[closestLevel], fontSize)) {
+                closestLevel = level;
+            }
+        }
+        return closestLevel;
+    }
+
+    public static float getLevelFontSize(int level) {
+        return LEVEL_FONT_SIZES[level];
+    }
+
+    // Return the image of a panel at a level, or null if there is none.
+    public Image get(int panel, int level) {
+        return images[level][panel];
+    }
+
+    // Return the level of the image of a panel that looks best when it's
+    // scaled to the given font size, or -1 if the panel has no images. That's
+    // the smallest image that is at least as large, since scaling images down
+    // looks better than scaling them up, or else the largest image.
+    public int findBestLevel(int panel, float fontSize) {
+        int bestLevel = -1;
+        for (int level = 0; level < LEVEL_FONT_SIZES.length; ++level) {
+            if (images[level][panel] != null) {
+                bestLevel = level;
+                if (LEVEL_FONT_SIZES[level] >= fontSize) {
+                    break;
+                }
+            }
+        }
+        return bestLevel;
+    }
+
+    // Store the image of a panel at a level. If the pyramid is too large
+    // afterwards, the other levels that are furthest from the current font
+    // size are removed until it fits.
+    public void put(int panel, int level, Image image, float currentFontSize) {
+        Image previous = images[level][panel];
+        if (previous != null) {
+            levelBytes[level] -= getByteCount(previous);
+        }
+        images[level][panel] = image;
+        levelBytes[level] += getByteCount(image);
+        while (getTotalBytes() > maxBytes) {
+            int furthestLevel = -1;
+            for (int other = 0; other < LEVEL_FONT_SIZES.length; ++other) {
+                if (other != level && levelBytes[other] > 0
+                        && (furthestLevel < 0 || getDistance(LEVEL_FONT_SIZES[other], currentFontSize) > getDistance(LEVEL_FONT_SIZES[furthestLevel], currentFontSize))) {
+                    furthestLevel = other;
+                }
+            }
+            if (furthestLevel < 0) {
+                // Only this level is left, so keep it even though it's too large.
+                break;
+            }
+            clearLevel(furthestLevel);
+        }
+    }
+
+    // Remove all the images.
+    public void clear() {
+        for (int level = 0; level < LEVEL_FONT_SIZES.length; ++level) {
+            clearLevel(level);
+        }
+    }
+
+    // Return the number of bytes of pixels of all the images.
+    public long getTotalBytes() {
+        long total = 0;
+        for (long bytes : levelBytes) {
+            total += bytes;
+        }
+        return total;
+    }
+
+    private void clearLevel(int level) {
+        Image[] levelImages = images[level];
+        for (int panel = 0; panel < levelImages.length; ++panel) {
+            levelImages[panel] = null;
+        }
+        levelBytes[level] = 0;
+    }
+
+    private static double getDistance(float fontSize, float otherFontSize) {
+        return Math.abs(Math.log(fontSize / otherFontSize));
+    }
+
+    private static long getByteCount(Image image) {
+        return (long) image.getWidth(null) * image.getHeight(null) * BYTES_PER_PIXEL;
+    }
+}
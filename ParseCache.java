@@ -0,0 +1,421 @@
+package javaprojectview.parser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+// Cache that stores the classes parsed from each source file in a compact
+// binary file inside a cache directory, so that unchanged files don't have to
+// be parsed again when the program is started again.
+//
+// Every source file gets its own cache file, named after a hash of the path of
+// the source file. A cache file starts with a header (magic number, format
+// version, source path and the fingerprint of the parsed version of the source
+// file), followed by a table with all the strings that are used, followed by
+// the classes (including their imports and wildcard imports). Strings, counts
+// and booleans are stored as variable-length integers, and strings are
+// referred to by their index in the table (plus one, so that 0 can mean null).
+public class ParseCache {
+
+    // "JPVC" in ASCII.
+    private static final int MAGIC = 0x4A505643;
+    // Must be increased whenever the format changes.
+    private static final int FORMAT_VERSION = 2;
+    // Number of bytes that are read from the start of a cache file to find the
+    // source path in its header. This is enough for almost every path; for
+    // longer paths, more of the file is read.
+    private static final int HEADER_READ_SIZE = 1024;
+
+    private static final Accessibility[] ACCESSIBILITIES = Accessibility.values();
+
+    // Directory that the cache files are stored in.
+    private final File directory;
+
+    // Create a cache that stores its files in the given directory. The
+    // directory is created when the first entry is written.
+    public ParseCache(File directory) {
+        this.directory = directory;
+    }
+
+    // Return the default cache directory in the home directory of the user.
+    public static File getDefaultDirectory() {
+        return new File(System.getProperty("user.home"), ".javaprojectview" + File.separator + "cache");
+    }
+
+    // Read the cache entry of a source file. Returns null if there is no entry,
+    // or if it can't be read (for example because it was written by a
+    // different version of the program). The classes are created for 'parser'.
+    Entry read(String sourcePath, JavaParser parser) {
+        File cacheFile = getCacheFile(sourcePath);
+        if (!cacheFile.isFile()) {
+            return null;
+        }
+        try {
+            // The file is read into memory instead of being mapped, since on
+            // some systems (like Windows) a mapped file can't be replaced until
+            // the mapping is garbage collected, so write would fail.
+            Decoder decoder = new Decoder(ByteBuffer.wrap(Files.readAllBytes(cacheFile.toPath())));
+            return decoder.readEntry(sourcePath, parser);
+        } catch (IOException | BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException | NegativeArraySizeException ex) {
+            // Treat entries that can't be read the same as missing entries.
+            return null;
+        }
+    }
+
+    // Write the cache entry of a source file, replacing any previous entry.
+    void write(String sourcePath, FileFingerprint fingerprint, ClassInfo[] classes) throws IOException {
+        Encoder encoder = new Encoder();
+        encoder.writeClasses(classes);
+        File cacheFile = getCacheFile(sourcePath);
+        directory.mkdirs();
+        // Write to a temporary file first, so that other instances never see a
+        // partially written entry.
+        File temporaryFile = File.createTempFile(cacheFile.getName(), ".tmp", directory);
+        try (OutputStream output = Files.newOutputStream(temporaryFile.toPath())) {
+            encoder.writeTo(output, sourcePath, fingerprint);
+        }
+        try {
+            Files.move(temporaryFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(temporaryFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temporaryFile.toPath());
+        }
+    }
+
+    // Remove the cache entry of a source file, if there is one.
+    void remove(String sourcePath) throws IOException {
+        Files.deleteIfExists(getCacheFile(sourcePath).toPath());
+    }
+
+    // Remove the entries of source files that don't exist anymore, and the
+    // entries that can't be used (like ones written by another version of the
+    // program), so that the directory doesn't keep growing as source files
+    // are deleted or moved. Entries of other source files are kept, since the
+    // directory is shared by all the files that were ever loaded.
+    void prune() throws IOException {
+        File[] cacheFiles = directory.listFiles((File file) -> file.getName().endsWith(".jpvc"));
+        if (cacheFiles == null) {
+            return;
+        }
+        for (File cacheFile : cacheFiles) {
+            String sourcePath = readSourcePath(cacheFile);
+            if (sourcePath == null || !new File(sourcePath).isFile()) {
+                Files.deleteIfExists(cacheFile.toPath());
+            }
+        }
+    }
+
+    // Read the source path from the header of a cache file, without reading
+    // the classes after it, since the directory can hold the entries of many
+    // projects. Returns null if the file can't be used.
+    private static String readSourcePath(File cacheFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(cacheFile.toPath())) {
+            long fileSize = channel.size();
+            for (long readSize = HEADER_READ_SIZE; ; readSize *= 4) {
+                ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(readSize, fileSize));
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, buffer.position()) < 0) {
+                        break;
+                    }
+                }
+                buffer.flip();
+                try {
+                    return new Decoder(buffer).readSourcePath();
+                } catch (BufferUnderflowException | IllegalArgumentException ex) {
+                    // The header is either longer than the part that was read,
+                    // or it is corrupt.
+                    if (readSize >= fileSize) {
+                        return null;
+                    }
+                }
+            }
+        }
+    }
+
+    // Return the file that the cache entry of a source file is stored in.
+    private File getCacheFile(String sourcePath) {
+        StringBuilder name = new StringBuilder();
+        for (byte b : FileFingerprint.hash(sourcePath.getBytes(StandardCharsets.UTF_8))) {
+            name.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return new File(directory, name.append(".jpvc").toString());
+    }
+
+    // Classes of a source file that were read from the cache, together with
+    // the fingerprint of the version of the file they were parsed from.
+    static class Entry {
+
+        private final FileFingerprint fingerprint;
+        private final ClassInfo[] classes;
+
+        Entry(FileFingerprint fingerprint, ClassInfo[] classes) {
+            this.fingerprint = fingerprint;
+            this.classes = classes;
+        }
+
+        FileFingerprint getFingerprint() {
+            return fingerprint;
+        }
+
+        ClassInfo[] getClasses() {
+            return classes;
+        }
+    }
+
+    // Converts classes to the binary format.
+    private static class Encoder {
+
+        private final HashMap<String, Integer> stringIndices;
+        private final ArrayList<String> strings;
+        private final ByteArrayOutputStream body;
+
+        Encoder() {
+            stringIndices = new HashMap<>();
+            strings = new ArrayList<>();
+            body = new ByteArrayOutputStream();
+        }
+
+        void writeClasses(ClassInfo[] classes) {
+            writeInt(body, classes.length);
+            for (ClassInfo classInfo : classes) {
+                HashMap<String, String> imports = classInfo.getImports();
+                writeInt(body, imports.size());
+                for (Map.Entry<String, String> entry : imports.entrySet()) {
+                    writeString(entry.getKey());
+                    writeString(entry.getValue());
+                }
+                String[] wildcardImports = classInfo.getWildcardImports();
+                writeInt(body, wildcardImports.length);
+                for (String wildcardImport : wildcardImports) {
+                    writeString(wildcardImport);
+                }
+                writeString(classInfo.getPackagePath());
+                writeString(classInfo.getName());
+                writeString(classInfo.getType());
+                writeString(classInfo.getSuperClassName());
+                writeString(classInfo.getOuterClassName());
+                String[] interfaceNames = classInfo.getInterfaceNames();
+                writeInt(body, interfaceNames.length);
+                for (String interfaceName : interfaceNames) {
+                    writeString(interfaceName);
+                }
+                FieldInfo[] fields = classInfo.getFields();
+                writeInt(body, fields.length);
+                for (FieldInfo field : fields) {
+                    writeMember(field);
+                }
+                MethodInfo[] methods = classInfo.getMethods();
+                writeInt(body, methods.length);
+                for (MethodInfo method : methods) {
+                    writeMember(method);
+                    ParameterInfo[] parameters = method.getParameters();
+                    writeInt(body, parameters.length);
+                    for (ParameterInfo parameter : parameters) {
+                        writeValue(parameter);
+                    }
+                    ValueInfo[] variables = method.getVariables();
+                    writeInt(body, variables.length);
+                    for (ValueInfo variable : variables) {
+                        writeValue(variable);
+                    }
+                }
+            }
+        }
+
+        // Write the header, the string table and the classes.
+        void writeTo(OutputStream output, String sourcePath, FileFingerprint fingerprint) throws IOException {
+            ByteArrayOutputStream header = new ByteArrayOutputStream();
+            writeInt(header, MAGIC);
+            writeInt(header, FORMAT_VERSION);
+            writeBytes(header, sourcePath.getBytes(StandardCharsets.UTF_8));
+            writeLong(header, fingerprint.getSize());
+            writeLong(header, fingerprint.getLastModified());
+            writeBytes(header, fingerprint.getContentHash());
+            writeInt(header, strings.size());
+            for (String string : strings) {
+                writeBytes(header, string.getBytes(StandardCharsets.UTF_8));
+            }
+            header.writeTo(output);
+            body.writeTo(output);
+        }
+
+        private void writeMember(MemberInfo member) {
+            writeInt(body, member.accessibility.ordinal());
+            writeString(member.getName());
+            writeString(member.getTypeName());
+            writeInt(body, (member.isFinal() ? 1 : 0) | (member.isStatic ? 2 : 0));
+        }
+
+        private void writeValue(ValueInfo value) {
+            writeString(value.getName());
+            writeString(value.getTypeName());
+            writeInt(body, value.isFinal() ? 1 : 0);
+        }
+
+        private void writeString(String string) {
+            if (string == null) {
+                writeInt(body, 0);
+                return;
+            }
+            Integer index = stringIndices.get(string);
+            if (index == null) {
+                index = strings.size();
+                stringIndices.put(string, index);
+                strings.add(string);
+            }
+            writeInt(body, index + 1);
+        }
+
+        private static void writeBytes(ByteArrayOutputStream output, byte[] bytes) {
+            writeInt(output, bytes.length);
+            output.write(bytes, 0, bytes.length);
+        }
+
+        // Write an unsigned variable-length integer, 7 bits per byte.
+        private static void writeInt(ByteArrayOutputStream output, int value) {
+            writeLong(output, value & 0xFFFFFFFFL);
+        }
+
+        private static void writeLong(ByteArrayOutputStream output, long value) {
+            while ((value & ~0x7FL) != 0) {
+                output.write((int) (value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            output.write((int) value);
+        }
+    }
+
+    // Reads classes in the binary format from a buffer.
+    private static class Decoder {
+
+        private final ByteBuffer buffer;
+        private String[] strings;
+
+        Decoder(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        // Read the header up to the source path. Returns null if the entry
+        // has another format.
+        String readSourcePath() {
+            if (readInt() != MAGIC || readInt() != FORMAT_VERSION) {
+                return null;
+            }
+            return new String(readBytes(), StandardCharsets.UTF_8);
+        }
+
+        Entry readEntry(String sourcePath, JavaParser parser) {
+            // Two paths could have the same hash, so check the path as well.
+            if (!sourcePath.equals(readSourcePath())) {
+                return null;
+            }
+            long size = readLong();
+            long lastModified = readLong();
+            FileFingerprint fingerprint = new FileFingerprint(size, lastModified, readBytes());
+            strings = new String[readCount()];
+            for (int i = 0; i < strings.length; ++i) {
+                strings[i] = new String(readBytes(), StandardCharsets.UTF_8);
+            }
+            ClassInfo[] classes = new ClassInfo[readCount()];
+            for (int i = 0; i < classes.length; ++i) {
+                HashMap<String, String> imports = new HashMap<>();
+                for (int j = readCount(); j > 0; --j) {
+                    String shortName = readString();
+                    imports.put(shortName, readString());
+                }
+                String[] wildcardImports = new String[readCount()];
+                for (int j = 0; j < wildcardImports.length; ++j) {
+                    wildcardImports[j] = readString();
+                }
+                String packagePath = readString();
+                String name = readString();
+                String type = readString();
+                String superClassName = readString();
+                String outerClassName = readString();
+                String[] interfaceNames = new String[readCount()];
+                for (int j = 0; j < interfaceNames.length; ++j) {
+                    interfaceNames[j] = readString();
+                }
+                FieldInfo[] fields = new FieldInfo[readCount()];
+                for (int j = 0; j < fields.length; ++j) {
+                    Accessibility accessibility = ACCESSIBILITIES[readInt()];
+                    String fieldName = readString();
+                    String typeName = readString();
+                    int flags = readInt();
+                    fields[j] = new FieldInfo(accessibility, fieldName, typeName, (flags & 1) != 0, (flags & 2) != 0);
+                }
+                MethodInfo[] methods = new MethodInfo[readCount()];
+                for (int j = 0; j < methods.length; ++j) {
+                    Accessibility accessibility = ACCESSIBILITIES[readInt()];
+                    String methodName = readString();
+                    String typeName = readString();
+                    int flags = readInt();
+                    ParameterInfo[] parameters = new ParameterInfo[readCount()];
+                    for (int k = 0; k < parameters.length; ++k) {
+                        String parameterName = readString();
+                        parameters[k] = new ParameterInfo(parameterName, readString(), readInt() != 0);
+                    }
+                    ValueInfo[] variables = new ValueInfo[readCount()];
+                    for (int k = 0; k < variables.length; ++k) {
+                        String variableName = readString();
+                        variables[k] = new ValueInfo(variableName, readString(), readInt() != 0);
+                    }
+                    methods[j] = new MethodInfo(accessibility, methodName, typeName, parameters, variables, (flags & 1) != 0, (flags & 2) != 0);
+                }
+                classes[i] = new ClassInfo(parser, imports, wildcardImports, packagePath, name, type, superClassName, outerClassName, interfaceNames, fields, methods);
+            }
+            return new Entry(fingerprint, classes);
+        }
+
+        private String readString() {
+            int index = readInt();
+            return index == 0 ? null : strings[index - 1];
+        }
+
+        private byte[] readBytes() {
+            byte[] bytes = new byte[readCount()];
+            buffer.get(bytes);
+            return bytes;
+        }
+
+        // Read the number of items that follow. Every item takes at least one
+        // byte, so a count that is larger than the number of bytes left can
+        // only come from a corrupt entry, and is rejected before an array of
+        // that size is created.
+        private int readCount() {
+            long count = readLong();
+            if (count < 0 || count > buffer.remaining()) {
+                throw new IllegalArgumentException("Invalid count: " + count);
+            }
+            return (int) count;
+        }
+
+        private int readInt() {
+            return (int) readLong();
+        }
+
+        private long readLong() {
+            long value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = buffer.get();
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package javaprojectview.parser;
+
+import java.io.File;
+
+// Receives the declarations that the parser finds, in the order they are found
+// in the source code. This makes it possible to process source files without
+// keeping information about all the classes in memory. All methods do nothing
+// by default, so listeners only need to implement the events they need.
+//
+// Classes, interfaces and enums are reported between startClass and endClass,
+// and can be nested (also inside methods). Fields and methods belong to the
+// innermost class that was started. Parameters and local variables belong to
+// the method that was started last.
+public interface ParseListener {
+
+    // Called before a source file is parsed. 'file' is null if source code
+    // was parsed directly.
+    public default void startFile(File file) {
+    }
+
+    // Called after a source file was parsed.
+    public default void endFile(File file) {
+    }
+
+    // Called for imports like "import package.ClassName;". 'shortName' is the
+    // part after the final dot.
+    public default void importClass(String shortName, String fullName) {
+    }
+
+    // Called for wildcard imports like "import package.*;".
+    public default void importPackage(String packageName) {
+    }
+
+    // Called when a class starts. 'name' is the name of the class and
+    // 'fullName' also includes the package and the outer classes. 'type' is
+    // "class", "interface" or "enum". 'superClassName' is null if the class
+    // doesn't extend anything.
+    public default void startClass(String name, String fullName, String type, String superClassName, String[] interfaceNames) {
+    }
+
+    // Called when the class that was started last ends.
+    public default void endClass() {
+    }
+
+    // Called for fields and enum values (which have no type name).
+    public default void field(Accessibility accessibility, String name, String typeName, boolean isFinal, boolean isStatic) {
+    }
+
+    // Called when a method (or constructor, which has no return type name)
+    // starts. Its parameters and local variables follow.
+    public default void startMethod(Accessibility accessibility, String name, String returnTypeName, boolean isFinal, boolean isStatic) {
+    }
+
+    // Called for every parameter of the method that was started last.
+    public default void parameter(String name, String typeName, boolean isFinal) {
+    }
+
+    // Called for every variable that is declared inside the method that was
+    // started last.
+    public default void localVariable(String name, String typeName, boolean isFinal) {
+    }
+
+    // Called when the method that was started last ends.
+    public default void endMethod() {
+    }
+}
@@ -0,0 +1,228 @@
+package javaprojectview.parser;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Keeps track of which classes were parsed from which source files, so that
+// loading the same files again only re-parses the files that were changed or
+// added. All the classes belong to the same JavaParser, so the classes of
+// unchanged files are kept as they are and resolve their types against the
+// classes of the new and changed files. Optionally, the classes are also
+// stored in a ParseCache so they survive restarts of the program.
+public class ParseSession {
+
+    // Parser that owns all the classes of this session.
+    private final JavaParser parser;
+    // Cache that parsed classes are stored in, or null if there is none.
+    private final ParseCache cache;
+    // Parsed source files, with their absolute path as the key.
+    private HashMap<String, SourceFile> sourceFiles;
+    // Files and directories that were loaded last.
+    private File[] roots;
+    // Number of files that had to be read during the last load.
+    private int readFileCount;
+    // Number of files that had to be parsed during the last load.
+    private int parsedFileCount;
+    // Whether the entries of deleted source files were removed from the cache
+    // yet. This is done once, during the first load.
+    private boolean cachePruned;
+
+    // Create a session that doesn't use a cache.
+    public ParseSession() {
+        this(null);
+    }
+
+    // Create a session that uses a cache (or no cache if 'cache' is null).
+    public ParseSession(ParseCache cache) {
+        this.cache = cache;
+        parser = new JavaParser();
+        sourceFiles = new HashMap<>();
+        roots = new File[0];
+    }
+
+    // Return the parser that owns the classes of this session.
+    public JavaParser getParser() {
+        return parser;
+    }
+
+    // Return the classes that were found in the files that were loaded last.
+    public ClassInfo[] getClasses() {
+        return parser.getClasses();
+    }
+
+    // Return the number of files whose contents had to be read during the last
+    // load, because they were new or their size or modification time changed.
+    public int getReadFileCount() {
+        return readFileCount;
+    }
+
+    // Return the number of files that had to be parsed during the last load.
+    public int getParsedFileCount() {
+        return parsedFileCount;
+    }
+
+    // Load the same files and directories as last time again.
+    public void reload() throws IOException {
+        load(roots);
+    }
+
+    // Load the same files and directories as last time again, telling the
+    // listener about the progress like load(File[], LoadListener).
+    public void reload(LoadListener listener) throws IOException {
+        load(roots, listener);
+    }
+
+    // Load source files. Directories are searched for java files the same way
+    // JavaParser.parseFile does. Files that have the same size and modification
+    // time as the last time they were loaded (or stored in the cache) are not
+    // read again, and files with the same contents are not parsed again. Files
+    // that aren't part of the selection anymore are forgotten. If reading a
+    // file fails, the session is left as it was and the exception is thrown.
+    public void load(File... roots) throws IOException {
+        load(roots, new LoadListener() {
+        });
+    }
+
+    // Load source files like load(File...), telling the listener how many of
+    // the files have been loaded. If the listener cancels the load, the files
+    // that haven't started yet are skipped, the session is left as it was and
+    // CancellationException is thrown.
+    public void load(File[] roots, LoadListener listener) throws IOException {
+        ArrayList<File> files = new ArrayList<>();
+        for (File root : roots) {
+            JavaParser.collectSourceFiles(root, files);
+        }
+        int numFiles = files.size();
+        listener.filesFound(numFiles);
+        String[] paths = new String[numFiles];
+        long[] sizes = new long[numFiles];
+        long[] modificationTimes = new long[numFiles];
+        SourceFile[] results = new SourceFile[numFiles];
+        // Find out which files need to be read.
+        int[] changedFiles = new int[numFiles];
+        int numChangedFiles = 0;
+        for (int i = 0; i < numFiles; ++i) {
+            File file = files.get(i);
+            paths[i] = file.getAbsolutePath();
+            sizes[i] = file.length();
+            modificationTimes[i] = file.lastModified();
+            SourceFile previous = sourceFiles.get(paths[i]);
+            if (previous != null && previous.fingerprint.matches(sizes[i], modificationTimes[i])) {
+                results[i] = previous;
+            } else {
+                changedFiles[numChangedFiles++] = i;
+            }
+        }
+        // Read the changed files and parse the ones with new contents.
+        boolean[] read = new boolean[numFiles];
+        boolean[] parsed = new boolean[numFiles];
+        JavaParser.SourceAction loadChangedFile = (SourceParser sourceParser, int changedIndex) -> {
+            int i = changedFiles[changedIndex];
+            ParseCache.Entry cached = cache == null ? null : cache.read(paths[i], parser);
+            if (cached != null && cached.getFingerprint().matches(sizes[i], modificationTimes[i])) {
+                // The cache has the classes of this version of the file.
+                results[i] = new SourceFile(cached.getFingerprint(), cached.getClasses());
+                return;
+            }
+            byte[] contents = Files.readAllBytes(files.get(i).toPath());
+            read[i] = true;
+            FileFingerprint fingerprint = new FileFingerprint(sizes[i], modificationTimes[i], FileFingerprint.hash(contents));
+            SourceFile previous = sourceFiles.get(paths[i]);
+            if (previous != null && previous.fingerprint.hasSameContents(fingerprint)) {
+                // Only the modification time changed.
+                results[i] = new SourceFile(fingerprint, previous.classes);
+            } else if (cached != null && cached.getFingerprint().hasSameContents(fingerprint)) {
+                // Only the modification time changed since the file was cached.
+                results[i] = new SourceFile(fingerprint, cached.getClasses());
+            } else {
+                results[i] = new SourceFile(fingerprint, parser.parseClasses(sourceParser, new String(contents, StandardCharsets.UTF_8)));
+                parsed[i] = true;
+            }
+            if (cache != null) {
+                // Replace the outdated (or missing) cache entry of the file.
+                try {
+                    cache.write(paths[i], fingerprint, results[i].classes);
+                } catch (IOException ex) {
+                    Logger.getLogger(ParseSession.class.getName()).log(Level.WARNING, null, ex);
+                }
+            }
+        };
+        // Unchanged files count as loaded right away.
+        AtomicInteger numLoadedFiles = new AtomicInteger(numFiles - numChangedFiles);
+        listener.fileLoaded(numLoadedFiles.get(), numFiles);
+        IOException[] errors = parser.forEachInParallel(numChangedFiles, (SourceParser sourceParser, int changedIndex) -> {
+            if (!listener.isCancelled()) {
+                loadChangedFile.run(sourceParser, changedIndex);
+                listener.fileLoaded(numLoadedFiles.incrementAndGet(), numFiles);
+            }
+        });
+        if (listener.isCancelled()) {
+            throw new CancellationException();
+        }
+        for (IOException error : errors) {
+            if (error != null) {
+                throw error;
+            }
+        }
+        // Register the classes in file order, so that the result is the same
+        // as parsing all the files from scratch.
+        HashMap<String, SourceFile> newSourceFiles = new HashMap<>();
+        parser.clear();
+        readFileCount = 0;
+        parsedFileCount = 0;
+        for (int i = 0; i < numFiles; ++i) {
+            newSourceFiles.put(paths[i], results[i]);
+            parser.register(results[i].classes);
+            if (read[i]) {
+                ++readFileCount;
+            }
+            if (parsed[i]) {
+                ++parsedFileCount;
+            }
+        }
+        if (cache != null) {
+            removeDeletedEntries(newSourceFiles);
+        }
+        sourceFiles = newSourceFiles;
+        this.roots = roots.clone();
+    }
+
+    // Remove the cache entries of the source files that were deleted: the
+    // files of the last load that are gone now, and (during the first load)
+    // all the other entries of files that don't exist anymore.
+    private void removeDeletedEntries(HashMap<String, SourceFile> newSourceFiles) {
+        try {
+            if (!cachePruned) {
+                cache.prune();
+                cachePruned = true;
+            }
+            for (String path : sourceFiles.keySet()) {
+                if (!newSourceFiles.containsKey(path) && !new File(path).isFile()) {
+                    cache.remove(path);
+                }
+            }
+        } catch (IOException ex) {
+            Logger.getLogger(ParseSession.class.getName()).log(Level.WARNING, null, ex);
+        }
+    }
+
+    // Classes found in a version of a source file.
+    private static class SourceFile {
+
+        private final FileFingerprint fingerprint;
+        private final ClassInfo[] classes;
+
+        SourceFile(FileFingerprint fingerprint, ClassInfo[] classes) {
+            this.fingerprint = fingerprint;
+            this.classes = classes;
+        }
+    }
+}
@@ -0,0 +1,420 @@
+package javaprojectview.graphics;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+// Writes an RGB PNG image a few rows at a time, so that the whole image never
+// has to be in memory. Every row is filtered with the PNG filter that gives
+// the smallest differences (the usual heuristic for picking a filter). The
+// rows that are written at once are split into blocks, which are filtered and
+// compressed on all cores at the same time.
+// Every block but the last one ends at a byte boundary (a sync flush), so the
+// compressed blocks can simply be put after each other to form a single zlib
+// stream, and their checksums are combined into the checksum of the whole
+// stream. Each block is compressed with the data before it as dictionary, so
+// it compresses almost as well as a single stream would. The compressed data
+// is written out in chunks of a fixed size.
+public class PngStripWriter implements Closeable {
+
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    // Maximum size of the compressed data in a single chunk.
+    private static final int CHUNK_SIZE = 1 << 16;
+    // Number of bytes of filtered rows to aim for in each block that is
+    // compressed on its own.
+    private static final int BLOCK_SIZE = 1 << 18;
+    private static final byte FILTER_NONE = 0;
+    private static final byte FILTER_SUB = 1;
+    private static final byte FILTER_UP = 2;
+    private static final byte FILTER_AVERAGE = 3;
+    private static final byte FILTER_PAETH = 4;
+    // Size of the window of previous data that deflate can refer to.
+    private static final int DICTIONARY_SIZE = 1 << 15;
+    // Modulus of the Adler-32 checksum.
+    private static final int ADLER_BASE = 65521;
+    // Rows of pixels that are painted at once by writeImage.
+    private static final int IMAGE_STRIP_PIXELS = 1 << 22;
+
+    private final DataOutputStream output;
+    private final int width;
+    private final int height;
+    private final int rowsPerBlock;
+    private final ChunkOutputStream chunkOutput;
+    // Pixels of the last row that was written, which the first row of the next
+    // block is filtered against.
+    private final int[] previousRow;
+    // Last filtered bytes of the rows written so far (up to DICTIONARY_SIZE),
+    // which the first block of the next rows uses as dictionary.
+    private byte[] dictionary;
+    // Adler-32 checksum of all the filtered rows so far.
+    private long checksum;
+    private int rowsWritten;
+
+    // Start writing an image of the given size. The output is closed when the
+    // writer is closed.
+    public PngStripWriter(OutputStream output, int width, int height) throws IOException {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Invalid image size: " + width + "x" + height);
+        }
+        if ((long) width * 3 + 1 > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Image is too wide: " + width);
+        }
+        this.output = new DataOutputStream(output);
+        this.width = width;
+        this.height = height;
+        rowsPerBlock = Math.max(BLOCK_SIZE / (width * 3 + 1), 1);
+        this.output.write(SIGNATURE);
+        ByteArrayOutputStream header = new ByteArrayOutputStream(13);
+        DataOutputStream headerOutput = new DataOutputStream(header);
+        headerOutput.writeInt(width);
+        headerOutput.writeInt(height);
+        headerOutput.writeByte(8); // bits per color
+        headerOutput.writeByte(2); // RGB
+        headerOutput.writeByte(0); // deflate compression
+        headerOutput.writeByte(0); // adaptive filtering
+        headerOutput.writeByte(0); // no interlacing
+        writeChunk("IHDR", header.toByteArray(), header.size());
+        chunkOutput = new ChunkOutputStream();
+        // zlib header: deflate with a 32 KiB window and default compression.
+        chunkOutput.write(new byte[] {0x78, (byte) 0x9C}, 0, 2);
+        previousRow = new int[width];
+        dictionary = new byte[0];
+        checksum = 1;
+        rowsWritten = 0;
+    }
+
+    // Write a whole image as a PNG file, a strip at a time.
+    public static void writeImage(BufferedImage image, OutputStream output) throws IOException {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int stripHeight = Math.max(Math.min(IMAGE_STRIP_PIXELS / width, height), 1);
+        int[] pixels = new int[width * stripHeight];
+        try (PngStripWriter writer = new PngStripWriter(output, width, height)) {
+            for (int y = 0; y < height; y += stripHeight) {
+                int numRows = Math.min(stripHeight, height - y);
+                image.getRGB(0, y, width, numRows, pixels, 0, width);
+                writer.writeRows(pixels, 0, width, numRows);
+            }
+        }
+    }
+
+    // Write rows of pixels, stored as 0xRRGGBB values (like in a
+    // TYPE_INT_RGB image). The pixel at (x, y) of the strip is at
+    // pixels[offset + y * scanSize + x]. Returns when the rows have been
+    // compressed, so the pixels can be changed afterwards.
+    public void writeRows(int[] pixels, int offset, int scanSize, int numRows) throws IOException {
+        if (rowsWritten + numRows > height) {
+            throw new IllegalStateException("Too many rows: " + (rowsWritten + numRows) + " > " + height);
+        }
+        if (numRows == 0) {
+            return;
+        }
+        int numBlocks = (numRows + rowsPerBlock - 1) / rowsPerBlock;
+        Block[] blocks = new Block[numBlocks];
+        ForkJoinPool.commonPool().invoke(new CompressTask(blocks, pixels, offset, scanSize, numRows, 0, numBlocks));
+        for (Block block : blocks) {
+            chunkOutput.write(block.data, 0, block.data.length);
+            checksum = combineChecksums(checksum, block.checksum, block.uncompressedLength);
+        }
+        dictionary = blocks[numBlocks - 1].tail;
+        System.arraycopy(pixels, offset + (numRows - 1) * scanSize, previousRow, 0, width);
+        rowsWritten += numRows;
+    }
+
+    // Finish the image and close the output. Throws an IllegalStateException
+    // if not all the rows were written.
+    @Override
+    public void close() throws IOException {
+        try {
+            if (rowsWritten != height) {
+                throw new IllegalStateException("Only " + rowsWritten + " of " + height + " rows were written");
+            }
+            // zlib trailer.
+            int value = (int) checksum;
+            chunkOutput.write(new byte[] {(byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value}, 0, 4);
+            chunkOutput.flush();
+            writeChunk("IEND", new byte[0], 0);
+        } finally {
+            output.close();
+        }
+    }
+
+    // Filter and compress a block of rows. The last block of the image
+    // finishes the deflate stream; the others end with a sync flush. Apart
+    // from the dictionary, only the filtered rows of the block are kept in
+    // memory, so the memory used for all the blocks is bounded by the size of
+    // the rows that are written at once, however wide the image is.
+    private Block compressBlock(int[] pixels, int offset, int scanSize, int firstRow, int numRows, boolean last) {
+        int rowSize = width * 3 + 1;
+        // The filtered bytes before the block are used as dictionary. The
+        // first block uses the dictionary from the previous call; the others
+        // filter the end of the rows before them again, since the block
+        // before may not be done yet.
+        int dictionaryLength = firstRow == 0 ? dictionary.length : (int) Math.min((long) firstRow * rowSize, DICTIONARY_SIZE);
+        byte[] filtered = new byte[dictionaryLength + numRows * rowSize];
+        if (firstRow == 0) {
+            System.arraycopy(dictionary, 0, filtered, 0, dictionaryLength);
+        } else {
+            int end = dictionaryLength;
+            for (int y = firstRow - 1; end > 0; --y) {
+                int count = Math.min(end, rowSize);
+                filterRow(pixels, offset, scanSize, y, rowSize - count, filtered, end - count);
+                end -= count;
+            }
+        }
+        for (int y = 0; y < numRows; ++y) {
+            filterRow(pixels, offset, scanSize, firstRow + y, 0, filtered, dictionaryLength + y * rowSize);
+        }
+        int dataLength = numRows * rowSize;
+        Adler32 adler = new Adler32();
+        adler.update(filtered, dictionaryLength, dataLength);
+        // Raw deflate data, without the zlib header and trailer.
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            if (dictionaryLength > 0) {
+                deflater.setDictionary(filtered, 0, dictionaryLength);
+            }
+            deflater.setInput(filtered, dictionaryLength, dataLength);
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(dataLength / 4 + 64);
+            byte[] buffer = new byte[CHUNK_SIZE];
+            if (last) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    int count = deflater.deflate(buffer);
+                    compressed.write(buffer, 0, count);
+                }
+            } else {
+                // A full buffer means that there may be more output.
+                int count;
+                do {
+                    count = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                    compressed.write(buffer, 0, count);
+                } while (count == buffer.length);
+            }
+            // Keep the end of the data, for the dictionary of the next rows.
+            int tailLength = Math.min(filtered.length, DICTIONARY_SIZE);
+            byte[] tail = new byte[tailLength];
+            System.arraycopy(filtered, filtered.length - tailLength, tail, 0, tailLength);
+            return new Block(compressed.toByteArray(), adler.getValue(), dataLength, tail);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    // Filter row y of the strip with the filter that gives the smallest sum
+    // of differences (counting the bytes as signed values, the usual
+    // heuristic), and store the filtered row from byte 'start' on (where byte
+    // 0 is the filter type) at dest[destOffset]. The filter is picked by
+    // going through the row twice, so no filtered copies of it are kept.
+    private void filterRow(int[] pixels, int offset, int scanSize, int y, int start, byte[] dest, int destOffset) {
+        int rowStart = offset + y * scanSize;
+        // The row above the first row of the strip was written last time.
+        int[] aboveRow = y == 0 ? previousRow : pixels;
+        int aboveStart = y == 0 ? 0 : rowStart - scanSize;
+        long sumNone = 0, sumSub = 0, sumUp = 0, sumAverage = 0, sumPaeth = 0;
+        for (int x = 0; x < width; ++x) {
+            int rgb = pixels[rowStart + x];
+            int leftRgb = x > 0 ? pixels[rowStart + x - 1] : 0;
+            int aboveRgb = aboveRow[aboveStart + x];
+            int aboveLeftRgb = x > 0 ? aboveRow[aboveStart + x - 1] : 0;
+            for (int shift = 16; shift >= 0; shift -= 8) {
+                int value = (rgb >> shift) & 0xFF;
+                int left = (leftRgb >> shift) & 0xFF;
+                int above = (aboveRgb >> shift) & 0xFF;
+                int aboveLeft = (aboveLeftRgb >> shift) & 0xFF;
+                sumNone += Math.abs((byte) value);
+                sumSub += Math.abs((byte) (value - left));
+                sumUp += Math.abs((byte) (value - above));
+                sumAverage += Math.abs((byte) (value - ((left + above) >> 1)));
+                sumPaeth += Math.abs((byte) (value - predictPaeth(left, above, aboveLeft)));
+            }
+        }
+        // On a tie, the filter that comes first wins.
+        int filter = FILTER_NONE;
+        long bestSum = sumNone;
+        if (sumSub < bestSum) {
+            filter = FILTER_SUB;
+            bestSum = sumSub;
+        }
+        if (sumUp < bestSum) {
+            filter = FILTER_UP;
+            bestSum = sumUp;
+        }
+        if (sumAverage < bestSum) {
+            filter = FILTER_AVERAGE;
+            bestSum = sumAverage;
+        }
+        if (sumPaeth < bestSum) {
+            filter = FILTER_PAETH;
+        }
+        int i = destOffset;
+        if (start == 0) {
+            dest[i++] = (byte) filter;
+            start = 1;
+        }
+        int channel = (start - 1) % 3;
+        for (int x = (start - 1) / 3; x < width; ++x, channel = 0) {
+            int rgb = pixels[rowStart + x];
+            int leftRgb = x > 0 ? pixels[rowStart + x - 1] : 0;
+            int aboveRgb = aboveRow[aboveStart + x];
+            int aboveLeftRgb = x > 0 ? aboveRow[aboveStart + x - 1] : 0;
+            for (; channel < 3; ++channel) {
+                int shift = 16 - channel * 8;
+                int value = (rgb >> shift) & 0xFF;
+                int left = (leftRgb >> shift) & 0xFF;
+                int above = (aboveRgb >> shift) & 0xFF;
+                int aboveLeft = (aboveLeftRgb >> shift) & 0xFF;
+                dest[i++] = (byte) (value - predict(filter, left, above, aboveLeft));
+            }
+        }
+    }
+
+    // Return the value that a filter subtracts from a byte.
+    private static int predict(int filter, int left, int above, int aboveLeft) {
+        switch (filter) {
+            case FILTER_SUB:
+                return left;
+            case FILTER_UP:
+                return above;
+            case FILTER_AVERAGE:
+                return (left + above) >> 1;
+            case FILTER_PAETH:
+                return predictPaeth(left, above, aboveLeft);
+            default:
+                return 0;
+        }
+    }
+
+    // Return whichever of the left, above and above left values is closest
+    // to left + above - aboveLeft.
+    private static int predictPaeth(int left, int above, int aboveLeft) {
+        int estimate = left + above - aboveLeft;
+        int leftDistance = Math.abs(estimate - left);
+        int aboveDistance = Math.abs(estimate - above);
+        int aboveLeftDistance = Math.abs(estimate - aboveLeft);
+        if (leftDistance <= aboveDistance && leftDistance <= aboveLeftDistance) {
+            return left;
+        }
+        return aboveDistance <= aboveLeftDistance ? above : aboveLeft;
+    }
+
+    // Return the Adler-32 checksum of two pieces of data put after each
+    // other, given the checksums of both and the length of the second one.
+    static long combineChecksums(long first, long second, long secondLength) {
+        long remainder = secondLength % ADLER_BASE;
+        long sum1 = first & 0xFFFF;
+        long sum2 = (remainder * sum1) % ADLER_BASE;
+        sum1 += (second & 0xFFFF) + ADLER_BASE - 1;
+        sum2 += (first >>> 16) + (second >>> 16) + ADLER_BASE - remainder;
+        sum1 %= ADLER_BASE;
+        sum2 %= ADLER_BASE;
+        return (sum2 << 16) | sum1;
+    }
+
+    private void writeChunk(String type, byte[] data, int length) throws IOException {
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data, 0, length);
+        output.writeInt(length);
+        output.write(typeBytes);
+        output.write(data, 0, length);
+        output.writeInt((int) crc.getValue());
+    }
+
+    // Compressed rows, the checksum and length of the filtered rows, and the
+    // last filtered bytes (for the dictionary of the next block).
+    private static class Block {
+
+        private final byte[] data;
+        private final long checksum;
+        private final int uncompressedLength;
+        private final byte[] tail;
+
+        Block(byte[] data, long checksum, int uncompressedLength, byte[] tail) {
+            this.data = data;
+            this.checksum = checksum;
+            this.uncompressedLength = uncompressedLength;
+            this.tail = tail;
+        }
+    }
+
+    // Task that compresses a range of blocks, splitting the range in half
+    // until it is a single block. Each block is only written to its own slot.
+    private class CompressTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Block[] blocks;
+        private final int[] pixels;
+        private final int offset, scanSize, numRows;
+        private final int start, end;
+
+        CompressTask(Block[] blocks, int[] pixels, int offset, int scanSize, int numRows, int start, int end) {
+            this.blocks = blocks;
+            this.pixels = pixels;
+            this.offset = offset;
+            this.scanSize = scanSize;
+            this.numRows = numRows;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start > 1) {
+                int middle = (start + end) >>> 1;
+                invokeAll(new CompressTask(blocks, pixels, offset, scanSize, numRows, start, middle),
+                          new CompressTask(blocks, pixels, offset, scanSize, numRows, middle, end));
+            } else {
+                int firstRow = start * rowsPerBlock;
+                int blockRows = Math.min(rowsPerBlock, numRows - firstRow);
+                boolean last = rowsWritten + firstRow + blockRows == height;
+                blocks[start] = compressBlock(pixels, offset, scanSize, firstRow, blockRows, last);
+            }
+        }
+    }
+
+    // Collects the compressed data and writes it as IDAT chunks.
+    private class ChunkOutputStream extends OutputStream {
+
+        private final byte[] buffer = new byte[CHUNK_SIZE];
+        private int size = 0;
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] data, int offset, int length) throws IOException {
+            while (length > 0) {
+                int count = Math.min(length, buffer.length - size);
+                System.arraycopy(data, offset, buffer, size, count);
+                size += count;
+                offset += count;
+                length -= count;
+                if (size == buffer.length) {
+                    flush();
+                }
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (size > 0) {
+                writeChunk("IDAT", buffer, size);
+                size = 0;
+            }
+        }
+    }
+}
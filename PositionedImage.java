@@ -56,8 +56,8 @@ public class PositionedImage {
         } else {
             // The line is not vertical.
             double slope = (double) deltaY / (double) deltaX;
-            points[0] = new Point(x1, (int) (y - 0.5 * width * slope + 0.5));
-            points[1] = new Point(x2, (int) (y + 0.5 * width * slope + 0.5));
+            points[0] = new Point(x1, round(y - 0.5 * width * slope));
+            points[1] = new Point(x2, round(y + 0.5 * width * slope));
         }
         if (deltaY == 0.0) {
             // The line is horizontal.
@@ -65,8 +65,8 @@ public class PositionedImage {
         } else {
             // The line is not horizontal.
             double slope = (double) deltaX / (double) deltaY;
-            points[2] = new Point((int) (x - height * 0.5 * slope + 0.5), y1);
-            points[3] = new Point((int) (x + height * 0.5 * slope + 0.5), y2);
+            points[2] = new Point(round(x - height * 0.5 * slope), y1);
+            points[3] = new Point(round(x + height * 0.5 * slope), y2);
         }
         Point targetPoint = new Point(targetX, targetY);
         Point closestPoint = null;
@@ -81,7 +81,16 @@ public class PositionedImage {
                 }
             }
         }
-        return closestPoint;
+        // One of the points should always lie on the rectangle, but fall back
+        // to its center rather than returning null.
+        return closestPoint != null ? closestPoint : new Point(x, y);
+    }
+    
+    // Round to the nearest integer, also for negative values (casting after
+    // adding 0.5 rounds those towards zero, which can move a point off the
+    // rectangle).
+    private static int round(double value) {
+        return (int) Math.floor(value + 0.5);
     }
     
     public Image getImage() {
@@ -37,6 +37,22 @@ public class Relation {
         return type.ordinal() > otherRelation.type.ordinal();
     }
     
+    // Return how strongly this relation pulls the two classes together in a
+    // force-directed layout. Inheritance pulls the hardest, and the many
+    // dependencies the least, so that class hierarchies stay together.
+    public float getStrength() {
+        switch (type) {
+            case GENERALIZATION:
+                return 1.0f;
+            case REALIZATION:
+                return 0.8f;
+            case ASSOCIATION:
+                return 0.6f;
+            default:
+                return 0.3f;
+        }
+    }
+    
     public Type getType() {
         return type;
     }
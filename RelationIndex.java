@@ -0,0 +1,152 @@
+package javaprojectview.uml;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+// Relations between the classes of a diagram, with at most one relation from
+// one class to another. The classes are identified by their index in the
+// diagram. Relations are found by their two classes through a hash map, and
+// every class has lists of the relations that start and end at it, so adding
+// a relation and finding the relations of a class don't have to look at all
+// the relations.
+public class RelationIndex {
+
+    // Relations in the order in which they were first added.
+    private Relation[] relations;
+    private int[] fromIndices;
+    private int[] toIndices;
+    private int numRelations;
+    // Index of the relation for each pair of classes, with the index of the
+    // 'from' class in the high 32 bits of the key.
+    private final HashMap<Long, Integer> relationsByClasses;
+    // Indices of the relations that start and end at each class. Relations of
+    // a class to itself aren't in these lists, since they don't connect
+    // anything.
+    private final int[][] outgoing;
+    private final int[] outgoingCounts;
+    private final int[][] incoming;
+    private final int[] incomingCounts;
+
+    public RelationIndex(int numClasses) {
+        relations = new Relation[16];
+        fromIndices = new int[16];
+        toIndices = new int[16];
+        numRelations = 0;
+        relationsByClasses = new HashMap<>();
+        outgoing = new int[numClasses][];
+        outgoingCounts = new int[numClasses];
+        incoming = new int[numClasses][];
+        incomingCounts = new int[numClasses];
+    }
+
+    // Add a relation from the class at fromIndex to the class at toIndex. If
+    // there already is a relation between them in the same direction, only the
+    // more important one is kept (in the place of the existing one). Returns
+    // the index of the relation that is kept.
+    public int add(Relation relation, int fromIndex, int toIndex) {
+        Long key = ((long) fromIndex << 32) | (toIndex & 0xFFFFFFFFL);
+        Integer existingIndex = relationsByClasses.get(key);
+        if (existingIndex != null) {
+            if (relation.isMoreImportantThan(relations[existingIndex])) {
+                relations[existingIndex] = relation;
+            }
+            return existingIndex;
+        }
+        if (numRelations == relations.length) {
+            relations = Arrays.copyOf(relations, numRelations * 2);
+            fromIndices = Arrays.copyOf(fromIndices, numRelations * 2);
+            toIndices = Arrays.copyOf(toIndices, numRelations * 2);
+        }
+        int index = numRelations++;
+        relations[index] = relation;
+        fromIndices[index] = fromIndex;
+        toIndices[index] = toIndex;
+        relationsByClasses.put(key, index);
+        if (fromIndex != toIndex) {
+            append(outgoing, outgoingCounts, fromIndex, index);
+            append(incoming, incomingCounts, toIndex, index);
+        }
+        return index;
+    }
+
+    // Return the number of relations.
+    public int size() {
+        return numRelations;
+    }
+
+    public Relation get(int index) {
+        return relations[index];
+    }
+
+    // Return the index of the class that a relation starts at.
+    public int getFromIndex(int index) {
+        return fromIndices[index];
+    }
+
+    // Return the index of the class that a relation ends at.
+    public int getToIndex(int index) {
+        return toIndices[index];
+    }
+
+    // Return the index of the relation from one class to another, or -1 if
+    // there is none.
+    public int find(int fromIndex, int toIndex) {
+        Integer index = relationsByClasses.get(((long) fromIndex << 32) | (toIndex & 0xFFFFFFFFL));
+        return index == null ? -1 : index;
+    }
+
+    // Return the indices of the relations that start at a class.
+    public int[] getOutgoing(int classIndex) {
+        return copy(outgoing[classIndex], outgoingCounts[classIndex], 0);
+    }
+
+    // Return the indices of the relations that end at a class.
+    public int[] getIncoming(int classIndex) {
+        return copy(incoming[classIndex], incomingCounts[classIndex], 0);
+    }
+
+    // Return the indices of the relations that start or end at a class: first
+    // the ones that start at it, then the ones that end at it.
+    public int[] getIncident(int classIndex) {
+        int numOutgoing = outgoingCounts[classIndex];
+        int[] result = copy(outgoing[classIndex], numOutgoing, incomingCounts[classIndex]);
+        if (incoming[classIndex] != null) {
+            System.arraycopy(incoming[classIndex], 0, result, numOutgoing, incomingCounts[classIndex]);
+        }
+        return result;
+    }
+
+    // Return the number of relations that start or end at a class.
+    public int getDegree(int classIndex) {
+        return outgoingCounts[classIndex] + incomingCounts[classIndex];
+    }
+
+    // Return the index of the class at the other end of a relation.
+    public int getOtherIndex(int index, int classIndex) {
+        return fromIndices[index] == classIndex ? toIndices[index] : fromIndices[index];
+    }
+
+    private static void append(int[][] lists, int[] counts, int classIndex, int value) {
+        int[] list = lists[classIndex];
+        int count = counts[classIndex];
+        if (list == null) {
+            list = new int[4];
+            lists[classIndex] = list;
+        } else if (count == list.length) {
+            list = Arrays.copyOf(list, count * 2);
+            lists[classIndex] = list;
+        }
+        list[count] = value;
+        counts[classIndex] = count + 1;
+    }
+
+    // Copy the first 'count' values of a list into a new array with room for
+    // 'extra' more values.
+    private static int[] copy(int[] list, int count, int extra) {
+        int[] result = new int[count + extra];
+        if (list != null) {
+            System.arraycopy(list, 0, result, 0, count);
+        }
+        return result;
+    }
+}
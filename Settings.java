@@ -12,10 +12,12 @@ import java.awt.Toolkit;
 import java.awt.image.BufferedImage;
 import java.awt.image.ImageObserver;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import javaprojectview.graphics.TextImageCache;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
@@ -31,19 +33,22 @@ public class Settings {
     private final Image emptyImage;
     private final Map desktopHints;
     
-    private HashMap<String, Color> colors;
-    
-    private Font regularFont, boldFont, italicFont, boldItalicFont, semiboldFont, semiboldItalicFont;
+    // Colors and fonts. Switching to another theme replaces the whole theme at
+    // once, so a thread that's painting never mixes colors of two themes.
+    private volatile Theme theme;
     
     private float baseFontSize;
     
-    private static Settings instance = null;
+    // Holds the instance, which is created the first time it's needed. The class
+    // loader makes sure this only happens once, even if multiple threads (like
+    // the workers that paint class info panels) ask for it at the same time.
+    private static class InstanceHolder {
+        
+        private static final Settings INSTANCE = new Settings();
+    }
     
     public static Settings getInstance() {
-        if (instance == null) {
-            instance = new Settings();
-        }
-        return instance;
+        return InstanceHolder.INSTANCE;
     }
     
     private Settings() {
@@ -61,6 +66,7 @@ public class Settings {
             }
         };
         desktopHints = (Map) Toolkit.getDefaultToolkit().getDesktopProperty("awt.font.desktophints");
+        Font regularFont = null, boldFont = null, italicFont = null, boldItalicFont = null, semiboldFont = null, semiboldItalicFont = null;
         try {
             regularFont = loadFont("fonts/SourceCodePro-Regular.ttf");
             boldFont = loadFont("fonts/SourceCodePro-Bold.ttf");
@@ -71,12 +77,13 @@ public class Settings {
         } catch (FontFormatException | IOException ex) {
             Logger.getLogger(Settings.class.getName()).log(Level.SEVERE, null, ex);
         }
-        colors = new HashMap<>();
+        HashMap<String, Color> colors = new HashMap<>();
         try {
-            loadColors();
+            colors = loadColors(getClass().getResourceAsStream("colors.xml"));
         } catch (IOException | SAXException | ParserConfigurationException ex) {
             Logger.getLogger(Settings.class.getName()).log(Level.SEVERE, null, ex);
         }
+        theme = new Theme(colors, regularFont, boldFont, italicFont, boldItalicFont, semiboldFont, semiboldItalicFont, desktopHints);
     }
     
     private Font loadFont(String uri) throws FontFormatException, IOException {
@@ -85,14 +92,17 @@ public class Settings {
         return font.deriveFont(12.0f);
     }
     
-    private void loadColors() throws IOException, SAXException, ParserConfigurationException {
+    // Read the colors from an XML file like colors.xml.
+    private static HashMap<String, Color> loadColors(InputStream input) throws IOException, SAXException, ParserConfigurationException {
         DocumentBuilder documentBuilder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
-        Document document = documentBuilder.parse(getClass().getResourceAsStream("colors.xml"));
+        Document document = documentBuilder.parse(input);
         document.getDocumentElement().normalize();
+        HashMap<String, Color> colors = new HashMap<>();
         putElementColors(colors, document.getElementsByTagName("colors").item(0).getChildNodes());
+        return colors;
     }
     
-    private void putElementColors(HashMap<String, Color> colors, NodeList elements) {
+    private static void putElementColors(HashMap<String, Color> colors, NodeList elements) {
         for (int i = 0, length = elements.getLength(); i < length; ++i) {
             Node node = elements.item(i);
             if (node.getNodeType() == Node.ELEMENT_NODE) {
@@ -119,19 +129,25 @@ public class Settings {
      * @return First available color in the list, or the "foreground" color.
      */
     public Color getColor(String names) {
-        if (names != null) {
-            // Split the string up based on the separators.
-            for (String name : names.split("[/,;:\\s]")) {
-                Color color = colors.get(name);
-                if (color != null) {
-                    // If the color exists, return it.
-                    return color;
-                }
-            }
-        }
-        // If none of the colors were found or names is null, then return the
-        // foreground color.
-        return colors.get("foreground");
+        return theme.getColor(names);
+    }
+    
+    // Return the current colors and fonts.
+    public Theme getTheme() {
+        return theme;
+    }
+    
+    // Switch to another theme. Text that is painted after this uses the new
+    // colors and fonts; the images of text that were painted with the old
+    // theme are thrown away.
+    public void setTheme(Theme theme) {
+        this.theme = theme;
+        TextImageCache.getInstance().clear();
+    }
+    
+    // Switch to the colors in an XML file like colors.xml, keeping the fonts.
+    public void loadTheme(InputStream colorsInput) throws IOException, SAXException, ParserConfigurationException {
+        setTheme(theme.withColors(loadColors(colorsInput)));
     }
     
     public Image getEmptyImage() {
@@ -145,32 +161,23 @@ public class Settings {
     }
     
     public Font getFont(float fontSize, boolean bold, boolean italic) {
-        Font baseFont;
-        if (bold) {
-            baseFont = italic ? boldItalicFont : boldFont;
-        } else if (fontSize <= 8.0f) {
-            // Use semibold fonts for small text for increased readability.
-            baseFont = italic ? semiboldItalicFont : semiboldFont;
-        } else {
-            baseFont = italic ? italicFont : regularFont;
-        }
-        return baseFont.deriveFont(fontSize);
+        return theme.getFontStyle(fontSize, bold, italic).getFont();
     }
 
     public Font getRegularFont() {
-        return regularFont;
+        return theme.getRegularFont();
     }
     
     public Font getBoldFont() {
-        return boldFont;
+        return theme.getBoldFont();
     }
     
     public Font getItalicFont() {
-        return italicFont;
+        return theme.getItalicFont();
     }
     
     public Font getBoldItalicFont() {
-        return boldItalicFont;
+        return theme.getBoldItalicFont();
     }
     
     public float getBaseFontSize() {
@@ -1,10 +1,13 @@
 package javaprojectview.graphics;
 
-import java.awt.Graphics;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
 import java.awt.Image;
 import java.awt.image.BufferedImage;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import javaprojectview.Settings;
 
 // Text object consisting of multiple pieces of text with different colors and styles.
@@ -65,41 +68,103 @@ public class SmartText implements TextImagePainter {
         return append(new SmartTextPart(text, style, colorNames, underlineColorNames));
     }
     
+    // Return the size of this text at the given font size, without painting
+    // anything. The parts are placed next to each other, so the width is the
+    // sum of their widths and the height is the height of the tallest part.
+    public Dimension getSize(float fontSize) {
+        int width = 0;
+        int height = 0;
+        for (SmartTextPart part : parts) {
+            Dimension partSize = part.getSize(fontSize);
+            width += partSize.width;
+            if (partSize.height > height) {
+                height = partSize.height;
+            }
+        }
+        if (width == 0 || height == 0) {
+            return new Dimension(0, 0);
+        }
+        return new Dimension(width, height);
+    }
+    
+    // Paint this text directly onto a graphics object, with the top left
+    // corner at (x, y). Returns the width of the text.
+    public int paint(Graphics2D graphics, float fontSize, int x, int y) {
+        int startX = x;
+        for (SmartTextPart part : parts) {
+            // Move to the right until after the part, so the next part is drawn after it.
+            x += part.paint(graphics, fontSize, x, y);
+        }
+        return x - startX;
+    }
+    
+    // Write this text to an SVG image, with the top left corner at (x, y).
+    // Returns the width of the text.
+    public int writeSvg(SvgWriter svg, float fontSize, int x, int y) throws IOException {
+        int startX = x;
+        for (SmartTextPart part : parts) {
+            x += part.writeSvg(svg, fontSize, x, y);
+        }
+        return x - startX;
+    }
+    
     // Create an image for this text using the given font size.
     @Override
     public Image paintImage(float fontSize) {
+        Settings settings = Settings.getInstance();
+        Dimension size = getSize(fontSize);
+        if (size.width == 0) {
+            // If the width or height is 0 then the image is empty. A BufferedImage then cannot
+            // be created, so create a dummy image instead.
+            return settings.getEmptyImage();
+        }
+        // Create image for this text.
+        BufferedImage image = new BufferedImage(size.width, size.height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = (Graphics2D) image.getGraphics();
+        settings.applyDesktopHints(graphics);
+        paint(graphics, fontSize, 0, 0);
+        // Finish drawing the image.
+        image.flush();
+        graphics.dispose();
+        return image;
+    }
+    
+    // Return the image of this text from the shared TextImageCache, so that
+    // equal lines (like the same method in different classes) share the same
+    // image.
+    public Image getImage(float fontSize) {
+        return TextImageCache.getInstance().getLineImage(this, fontSize);
+    }
+    
+    // Return the parts that this text consists of.
+    List<SmartTextPart> getParts() {
+        return parts;
+    }
+    
+    // Create an image for this text out of the images of the parts in a cache.
+    Image composeImage(float fontSize, TextImageCache cache) {
         Settings settings = Settings.getInstance();
         Image[] partImages = new Image[parts.size()];
         int width = 0;
         int height = 0;
-        int i = 0;
-        for (SmartTextPart part : parts) {
-            // Draw the part with the font and add it to the list of images.
-            Image partImage = part.paintImage(fontSize);
-            partImages[i++] = partImage;
-            int partWidth = partImage.getWidth(null);
-            int partHeight = partImage.getHeight(null);
-            // Add the widths of the parts together to get the total width.
+        for (int i = 0; i < partImages.length; ++i) {
+            Image partImage = cache.getPartImage(parts.get(i), fontSize);
+            partImages[i] = partImage;
+            // Add the widths of the parts together to get the total width, and use
+            // the height of the tallest part.
             width += partImage.getWidth(null);
-            if (partHeight > height) {
-                // Make the overall image height the height of the tallest part.
-                height = partHeight;
-            }
+            height = Math.max(partImage.getHeight(null), height);
         }
         if (width == 0 || height == 0) {
-            // If the width or height is 0 then the image is empty. A BufferedImage then cannot
-            // be created, so create a dummy image instead.
             return settings.getEmptyImage();
         }
-        // Create image for this text.
         BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
-        Graphics graphics = image.getGraphics();
+        Graphics2D graphics = (Graphics2D) image.getGraphics();
         settings.applyDesktopHints(graphics);
         int x = 0;
         for (Image partImage : partImages) {
-            // Draw the text for the part using the image created earlier.
+            // Draw the parts next to each other.
             graphics.drawImage(partImage, x, 0, null);
-            // Then move to the right until after the part, so the next part can be drawn after it.
             x += partImage.getWidth(null);
         }
         // Finish drawing the image.
@@ -1,12 +1,17 @@
 package javaprojectview.graphics;
 
 import java.awt.Color;
+import java.awt.Dimension;
 import java.awt.Font;
 import java.awt.FontMetrics;
 import java.awt.Graphics2D;
 import java.awt.Image;
+import java.awt.Shape;
 import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.Objects;
 import javaprojectview.Settings;
+import javaprojectview.Theme;
 
 // Piece of text with a specific color and underline color.
 public class SmartTextPart implements TextImagePainter {
@@ -16,6 +21,9 @@ public class SmartTextPart implements TextImagePainter {
     private final boolean italic;
     private final String colorNames;
     private final String underlineColorNames;
+    // Colors and font of this part in the current theme. It's made when it's
+    // first needed, and again when the theme changes.
+    private volatile TextStyle style;
     
     public SmartTextPart(String text) {
         this(text, 0, null, null);
@@ -49,29 +57,53 @@ public class SmartTextPart implements TextImagePainter {
         this.underlineColorNames = underlineColorNames;
     }
     
-    // Create an image for this text part using the given font size.
-    @Override
-    public Image paintImage(float fontSize) {
+    // Return the colors and font of this part in the current theme.
+    public TextStyle getStyle() {
+        Theme theme = Settings.getInstance().getTheme();
+        TextStyle currentStyle = style;
+        if (currentStyle == null || currentStyle.getTheme() != theme) {
+            // Threads that get here at the same time make equal handles, so it
+            // doesn't matter which one is kept.
+            currentStyle = new TextStyle(theme, bold, italic, colorNames, underlineColorNames);
+            style = currentStyle;
+        }
+        return currentStyle;
+    }
+    
+    // Return the size of this text part at the given font size, without
+    // painting anything. Empty text has a size of 0 by 0.
+    public Dimension getSize(float fontSize) {
+        FontMetrics metrics = getStyle().getFontStyle(fontSize).getMetrics();
+        int width = metrics.stringWidth(text);
+        int height = metrics.getHeight();
+        if (width == 0 || height == 0) {
+            return new Dimension(0, 0);
+        }
+        return new Dimension(width, height);
+    }
+    
+    // Paint this text part directly onto a graphics object, with the top left
+    // corner at (x, y). Returns the width of the text part.
+    public int paint(Graphics2D graphics, float fontSize, int x, int y) {
         Settings settings = Settings.getInstance();
-        Font font = settings.getFont(fontSize, bold, italic);
-        FontMetrics metrics = settings.getFontMetrics(font);
+        TextStyle textStyle = getStyle();
+        Theme.FontStyle fontStyle = textStyle.getFontStyle(fontSize);
+        FontMetrics metrics = fontStyle.getMetrics();
         // Measure the size of the text.
         int width = metrics.stringWidth(text);
         int height = metrics.getHeight();
         if (width == 0 || height == 0) {
-            // If the width or height is 0 then the image is empty. A BufferedImage then cannot
-            // be created, so create a dummy image instead.
-            return settings.getEmptyImage();
+            // Nothing to paint.
+            return 0;
         }
-        // Create a buffer for the image.
-        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
-        Graphics2D graphics = (Graphics2D) image.getGraphics();
-        // Apply default desktop rendering hints for better quality.
-        settings.applyDesktopHints(graphics);
+        // Keep glyphs that stick out of the measured size (which happens with
+        // small fonts) from being drawn over the text next to this part.
+        Shape oldClip = graphics.getClip();
+        graphics.clipRect(x, y, width, height);
         // If the underlineColor isn't null, then draw a line under the text.
-        if (underlineColorNames != null) {
+        Color underlineColor = textStyle.getUnderlineColor();
+        if (underlineColor != null) {
             float underlineThickness = fontSize / settings.getBaseFontSize();
-            Color underlineColor = settings.getColor(underlineColorNames);
             if (underlineThickness < 1.0f) {
                 // If the underline is less than one pixel thick, then draw a one pixel thick,
                 // semi-transparent line.
@@ -79,20 +111,90 @@ public class SmartTextPart implements TextImagePainter {
                 underlineThickness = 1.0f;
             }
             graphics.setColor(underlineColor);
-            int underlineY = metrics.getAscent() + 1;
-            graphics.fillRect(0, underlineY, width, (int) underlineThickness);
+            int underlineY = y + metrics.getAscent() + 1;
+            graphics.fillRect(x, underlineY, width, (int) underlineThickness);
         }
         // Set the font and color for the text.
-        graphics.setColor(settings.getColor(colorNames));
-        graphics.setFont(font);
+        graphics.setColor(textStyle.getColor());
+        graphics.setFont(fontStyle.getFont());
         // Draw the text.
-        graphics.drawString(text, 0, metrics.getMaxAscent());
+        graphics.drawString(text, x, y + metrics.getMaxAscent());
+        graphics.setClip(oldClip);
+        return width;
+    }
+    
+    // Write this text part to an SVG image, with the top left corner at (x, y).
+    // Returns the width of the text part, like paint.
+    public int writeSvg(SvgWriter svg, float fontSize, int x, int y) throws IOException {
+        Settings settings = Settings.getInstance();
+        TextStyle textStyle = getStyle();
+        Theme.FontStyle fontStyle = textStyle.getFontStyle(fontSize);
+        FontMetrics metrics = fontStyle.getMetrics();
+        int width = metrics.stringWidth(text);
+        int height = metrics.getHeight();
+        if (width == 0 || height == 0) {
+            return 0;
+        }
+        if (textStyle.getUnderlineColor() != null) {
+            // Thin underlines don't have to be made transparent like in paint,
+            // since the viewer draws them at their real thickness.
+            float underlineThickness = fontSize / settings.getBaseFontSize();
+            svg.fillRect(x, y + metrics.getAscent() + 1, width, underlineThickness, textStyle.getUnderlineColor());
+        }
+        svg.drawText(text, x, y + metrics.getMaxAscent(), fontSize, fontStyle.getWeight(), italic, textStyle.getColor());
+        return width;
+    }
+    
+    // Create an image for this text part using the given font size.
+    @Override
+    public Image paintImage(float fontSize) {
+        Settings settings = Settings.getInstance();
+        Dimension size = getSize(fontSize);
+        if (size.width == 0) {
+            // If the width or height is 0 then the image is empty. A BufferedImage then cannot
+            // be created, so create a dummy image instead.
+            return settings.getEmptyImage();
+        }
+        // Create a buffer for the image.
+        BufferedImage image = new BufferedImage(size.width, size.height, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D graphics = (Graphics2D) image.getGraphics();
+        // Apply default desktop rendering hints for better quality.
+        settings.applyDesktopHints(graphics);
+        paint(graphics, fontSize, 0, 0);
         // Finish drawing the image.
         image.flush();
         graphics.dispose();
         return image;
     }
     
+    // Return the image of this text part from the shared TextImageCache, so
+    // that equal text parts share the same image.
+    public Image getImage(float fontSize) {
+        return TextImageCache.getInstance().getPartImage(this, fontSize);
+    }
+    
+    // Text parts are equal if they have the same text, style and colors, which
+    // means that they look exactly the same.
+    @Override
+    public boolean equals(Object object) {
+        if (!(object instanceof SmartTextPart)) {
+            return false;
+        }
+        SmartTextPart other = (SmartTextPart) object;
+        return text.equals(other.text) && bold == other.bold && italic == other.italic
+            && Objects.equals(colorNames, other.colorNames) && Objects.equals(underlineColorNames, other.underlineColorNames);
+    }
+    
+    @Override
+    public int hashCode() {
+        int hash = text.hashCode();
+        hash = hash * 31 + (bold ? 1 : 0);
+        hash = hash * 31 + (italic ? 1 : 0);
+        hash = hash * 31 + Objects.hashCode(colorNames);
+        hash = hash * 31 + Objects.hashCode(underlineColorNames);
+        return hash;
+    }
+    
     // Return the plain text of this part.
     @Override
     public String toString() {
@@ -0,0 +1,806 @@
+package javaprojectview.parser;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+// Parse context for a single source file at a time. All the state needed while
+// scanning a file lives here, so every thread that parses files needs its own
+// instance. The parser can be reused for multiple files one after another.
+// Declarations are passed to a ParseListener as soon as they are found, so the
+// parser itself doesn't keep anything of the file after parsing it.
+class SourceParser {
+
+    // Set of keywords that should be ignored.
+    private static final HashSet<String> IGNORED_KEYWORDS = new HashSet<>(Arrays.asList(
+            "abstract",
+            "assert",
+            "break",
+            "case",
+            "continue",
+            "default",
+            "do",
+            "else",
+            "finally",
+            "for",
+            "if",
+            "native",
+            "new",
+            "return",
+            "strictfp",
+            "switch",
+            "synchronized",
+            "throw",
+            "transient",
+            "try",
+            "volatile",
+            "while"
+    ));
+    
+    // Names of the interfaces of a class that doesn't implement any.
+    private static final String[] NO_NAMES = new String[0];
+
+    // Keywords that have a special meaning when parsing statements.
+    private static final String[] KEYWORDS = {
+            "class",
+            "enum",
+            "extends",
+            "final",
+            "implements",
+            "import",
+            "interface",
+            "package",
+            "private",
+            "protected",
+            "public",
+            "static"
+    };
+    
+    // Source code that is currently being parsed.
+    private String sourceCode;
+    // Current position in the source code.
+    private int index;
+    // Position to jump to when the "class" keyword is found.
+    private int insideBracketsIndex;
+    // Keeps track how deep the code is inside curly brackets inside a method.
+    private int curlyBracketsLevel;
+    // Package or class that the parser is currently in.
+    private String currentPackage;
+    // What the statements that are currently being parsed belong to.
+    private Scope currentScope;
+    // Whether or not a method is currently being scanned for variables.
+    private boolean inMethod;
+    // Listener that receives the declarations found in the current source code.
+    private ParseListener listener;
+
+    // Interned names, shared by all the files parsed by this parser until
+    // forgetNames is called. Also contains all keywords, so that tokens can be
+    // compared to them without creating strings.
+    private final SymbolTable symbols;
+    // Token lists for each level of nested parse calls. A parse call keeps
+    // using the tokens of its statement after parsing a nested class or method,
+    // so every level needs its own list.
+    private TokenList[] tokenLists;
+    // Number of parse calls that are currently running.
+    private int parseDepth;
+    // Start and end offsets of the parts found by splitToken.
+    private int[] partBounds;
+    
+    // Create the object.
+    SourceParser() {
+        symbols = new SymbolTable();
+        for (String keyword : KEYWORDS) {
+            symbols.add(keyword);
+        }
+        for (String keyword : IGNORED_KEYWORDS) {
+            symbols.add(keyword);
+        }
+        symbols.mark();
+        tokenLists = new TokenList[0];
+        partBounds = new int[16];
+    }
+
+    // Parse information about classes inside the source code and pass it to
+    // the listener.
+    void parseSourceCode(String code, ParseListener listener) {
+        sourceCode = code;
+        this.listener = listener;
+        index = 0;
+        curlyBracketsLevel = 0;
+        currentPackage = "";
+        currentScope = Scope.FILE;
+        inMethod = false;
+        try {
+            parse();
+        } finally {
+            // Don't keep the source code of the file alive after parsing it.
+            sourceCode = null;
+            this.listener = null;
+        }
+    }
+
+    // Remove all names from the symbol table except for the keywords. Names
+    // that are still used elsewhere stay valid, but names in later files will
+    // no longer be the same String objects.
+    void forgetNames() {
+        symbols.reset();
+    }
+
+    // Parse the current source code at the current position until the end of
+    // the file or the end of the class has been detected.
+    private void parse() {
+        if (parseDepth == tokenLists.length) {
+            tokenLists = Arrays.copyOf(tokenLists, parseDepth + 1);
+            tokenLists[parseDepth] = new TokenList();
+        }
+        TokenList tokens = tokenLists[parseDepth++];
+        for (int length = sourceCode.length(); index < length; ++index) {
+            char c = sourceCode.charAt(index);
+            if (!Character.isWhitespace(c)) {
+                if (tokenizeStatement(sourceCode, tokens)) {
+                    parseStatementTokens(tokens);
+                } else {
+                    break;
+                }
+            }
+        }
+        --parseDepth;
+    }
+    
+    // Automatically detects the comment type and skips the comment if there is any.
+    // If it's not a comment, then simply skips the current character.
+    // Should be called if a '/' is encountered.
+    private void skipComment() {
+        int length = sourceCode.length();
+        if (++index < length) {
+            char character = sourceCode.charAt(index);
+            if (character == '/') {
+                // If it's a line comment (//) then skip to the next line.
+                // Find the next line.
+                index = sourceCode.indexOf('\n', index);
+                // Skip to after it if it's found, or the end of the source code
+                // otherwise.
+                index = index == -1 ? length : index + 1;
+            } else if (character == '*') {
+                // If it's a long comment (/* ... */) then skip to after the
+                // occurrence of "*/".
+                // Find "*/".
+                index = sourceCode.indexOf("*/", index);
+                // Skip to after it if it's found, or the end of the source code
+                // otherwise.
+                index = index == -1 ? length : index + 2;
+            }
+        }
+    }
+
+    // Skips characters until all opening brackets/parentheses (defined by
+    // openingChar) have been matched by closing brackets/parentheses (defined
+    // by closingChar).
+    private void skipBrackets(char openingChar, char closingChar) {
+        int nestedLevel = 0;
+        int length = sourceCode.length();
+        char stringType = 0;
+        do {
+            char character = sourceCode.charAt(index);
+            if (stringType != 0) {
+                // Currently in string skipping mode.
+                if (character == stringType) {
+                    // Exit string skipping mode.
+                    stringType = 0;
+                } else if (character == '\\') {
+                    // Skip escaped character.
+                    ++index;
+                }
+            } else if (character == '/') {
+                // Skip the comment if there is any.
+                skipComment();
+                // skipComment skips to the first character after the comment but
+                // the index is already incremented by this loop, so decrement it
+                // to compensate.
+                --index;
+            } else if (character == openingChar) {
+                // Entering brackets.
+                ++nestedLevel;
+            } else if (character == closingChar) {
+                // Exiting brackets.
+                --nestedLevel;
+            } else if (character == '\'' || character == '"') {
+                // Enter string skipping mode.
+                stringType = character;
+            }
+            // Keep going until the end of the string or if all brackets are matched.
+        } while (++index < length && nestedLevel > 0);
+    }
+
+    // Tokenize a single statement of code, until a ';', '{', '}', or '=' is
+    // found. The tokens are stored in 'tokens', and the token that is being
+    // built is kept at the end of it. Returns false if the end of the source
+    // code was reached before the statement ended.
+    private boolean tokenizeStatement(String sourceCode, TokenList tokens) {
+        tokens.clear();
+        // Keep track of how deep the tokenizer is currently inside parentheses
+        // (in which case it is looking at the parameters of a method).
+        int parenthesesLevel = 0;
+        // Keep track of how many nested '<' or '>' there are (for template arguments).
+        int angleBracketsLevel = 0;
+        // Whether or not a string is currently being parsed, and whether it started
+        // with a ' or ".
+        char stringType = 0;
+        for (int length = sourceCode.length(); index < length; ) {
+            char c = sourceCode.charAt(index);
+            if (stringType != 0) {
+                // Currently skipping a string.
+                ++index;
+                if (c == stringType) {
+                    // End of string.
+                    stringType = 0;
+                } else if (c == '\\') {
+                    // Skip the next character after \.
+                    ++index;
+                }
+            } else {
+                boolean isWhitespace = Character.isWhitespace(c);
+                boolean newWord = isWhitespace || c == '/' || (tokens.pendingLength() > 0 &&
+                        (c == '(' || c == ')' || c == '.' || c == ',' || c == '<' || c == '>' || c == '[' || c == ']' || c == '=' || c == '{' || c == '?'));
+                if (newWord) {
+                    // If the current character is whitespace or a special symbol, then consider starting a new token.
+                    if (isWhitespace) {
+                        // Skip all extra whitespace.
+                        while (++index < length && Character.isWhitespace(c = sourceCode.charAt(index))) {}
+                    }
+                    switch (c) {
+                        case '/':
+                            skipComment();
+                            break;
+                        case '.':
+                        case ',':
+                        case '<':
+                        case '>':
+                        case '[':
+                        case ']':
+                        case '?':
+                            // If the next non-whitespace character is '.', ',', '<', '>', '[', ']', or '?',
+                            // then keep building the token, unless it is ',' and the parser is within
+                            // parentheses and not within angle brackets.
+                            // This allows things like java.util.ArrayList<String> to be a single token.
+                            if (c == '<') {
+                                ++angleBracketsLevel;
+                            } else if (c == '>') {
+                                --angleBracketsLevel;
+                            }
+                            // Also look for the next non-whitespace character after this one.
+                            int nonWhitespaceIndex = index;
+                            char nonWhitespaceCharacter = 0;
+                            while (++nonWhitespaceIndex < length && Character.isWhitespace(nonWhitespaceCharacter = sourceCode.charAt(nonWhitespaceIndex))) {}
+                            // If the next non-whitespace character is a '[', then continue regardless of anything else.
+                            if (((c != ',' || parenthesesLevel == 0) && c != '>' && c != ']' && c != '?') || angleBracketsLevel > 0 || nonWhitespaceCharacter == '[') {
+                                tokens.append(c);
+                                // Skip whitespace afterwards by jumping to the next non-whitespace
+                                // character. This allows things like "var1, var2, var3" to be a single
+                                // token.
+                                index = nonWhitespaceIndex;
+                                break;
+                            } else {
+                                // Finish the token after all.
+                                if (c == '>' || c == ']' || c == '?') {
+                                    tokens.append(c);
+                                }
+                                ++index;
+                            }
+                        default:
+                            // The token is complete.
+                            if (tokens.pendingLength() > 0) {
+                                if (tokens.pendingCharAt(0) == '@') {
+                                    if (c == '(') {
+                                        skipBrackets('(', ')'); // skip parentheses after annotation if there are any
+                                    }
+                                    tokens.discardPending(); // annotations aren't tokens
+                                } else {
+                                    tokens.finishPending(); // add the token
+                                }
+                            }
+                            break;
+                    }
+                } else {
+                    switch (c) {
+                        case '\'':
+                        case '"':
+                            // Enter string skipping mode.
+                            stringType = c;
+                            ++index;
+                            break;
+                        case '(':
+                        case ')':
+                            tokens.add(c);
+                            // If '(' then enter method parameters, otherwise exit it.
+                            if (c == '(') {
+                                ++parenthesesLevel;
+                                ++index;
+                            } else {
+                                --parenthesesLevel;
+                                // Skip whitespace.
+                                while (++index < length && Character.isWhitespace(c = sourceCode.charAt(index))) {}
+                                if (c != '{' && c != 't') {
+                                    // If a ')' is followed by something other than a '{' or a 't' (from "throws"),
+                                    // then it is likely not a method.
+                                    // It is most likely an enum instantiation instead, which can happen if an enum
+                                    // has a constructor. Like:
+                                    // enum Example { VALUE(1); Example(int x) {} }
+                                    // Make sure that the first token isn't a keyword, as keywords can't be enum
+                                    // value identifiers anyway.
+                                    if (!isIgnoredKeyword(tokens, 0)) {
+                                        // If there is more than one token before '(', then it's an abstract
+                                        // method declaration instead, so check for that.
+                                        int indexBeforeParentheses;
+                                        for (indexBeforeParentheses = tokens.size() - 1; indexBeforeParentheses >= 0; --indexBeforeParentheses) {
+                                            if (tokens.equals(indexBeforeParentheses, '(')) {
+                                                break;
+                                            }
+                                        }
+                                        if (indexBeforeParentheses < 2) {
+                                            // There aren't multiple tokens before '(' so it is an enum after all.
+                                            // In that case, keep removing tokens until '(' has been removed, so that instead
+                                            // of [VALUE, (, 1, )], only [VALUE] remains, which is the name of the enum value,
+                                            // which we are interested in.
+                                            while (tokens.size() > 1) {
+                                                boolean isParenthesis = tokens.equals(tokens.size() - 1, '(');
+                                                tokens.removeLast();
+                                                if (isParenthesis) {
+                                                    break;
+                                                }
+                                            }
+                                            // Also, continue building the previous token if there is any, since the token
+                                            // should be "VALUE1,VALUE2,VALUE3" (for example).
+                                            if (tokens.size() > 0) {
+                                                tokens.reopenLast();
+                                            }
+                                        }
+                                    }
+                                }
+                            }
+                            break;
+                        case ':':
+                        case ';':
+                        case '{':
+                        case '}':
+                        case '=':
+                            int numTokens = tokens.size();
+                            // If the character is ':', then only end the statement if it starts with case/default,
+                            // or the statement only has one token in it so far (including the builder).
+                            // Otherwise, skip to the default character handler below.
+                            if (c != ':' || ((numTokens > 0 && (tokens.equals(0, "case") || tokens.equals(0, "default"))) ||
+                                             tokens.pendingEquals("default") ||
+                                             (tokens.pendingLength() == 0 ? 0 : 1) + numTokens == 1)) {
+                                if (parenthesesLevel > 0) {
+                                    // If still in parentheses, then ignore this character.
+                                    ++index;
+                                    break;
+                                }
+                                // Otherwise, finish the statement.
+                                boolean continueParsing = false;
+                                switch (c) {
+                                    case '{':
+                                        // Skip the brackets.
+                                        insideBracketsIndex = index + 1;
+                                        skipBrackets('{', '}');
+                                        if (tokens.size() == 1 && !isIgnoredKeyword(tokens, 0)) {
+                                            // If there was only one token before '{', it was a enum value
+                                            // implementing an abstract method, like for example:
+                                            // enum Example { VALUE { void test() {} }; abstract void test(); }
+                                            // In that case, it the end of the statement is only reached once ';'
+                                            // is found so we should continue parsing the statement despite
+                                            // encountering a '{'.
+                                            continueParsing = true;
+                                            // Continue building the previous token.
+                                            tokens.reopenLast();
+                                            // If the token is a keyword, then it's a block instead, so it shouldn't
+                                            // be extended.
+                                        } else {
+                                            // Otherwise return to the loop in the parse function.
+                                            if (inMethod && !(tokens.size() > 0 && tokens.equals(0, "new"))) {
+                                                // If a method is currently being scanned for variables, then look
+                                                // for more variables inside the brackets.
+                                                // But if the first token of the current statement is "new", then
+                                                // don't include what's in the brackets, as it is an anonymous inner
+                                                // class.
+                                                index = insideBracketsIndex;
+                                                ++curlyBracketsLevel;
+                                            }
+                                            // The parse loop increments index and skipBrackets places you after
+                                            // the closing bracket, so decrement the index here to compensate.
+                                            --index;
+                                        }
+                                        break;
+                                    case '=':
+                                        int[] bracketLevels = new int[3];
+                                        while (++index < length) {
+                                            boolean finished = false;
+                                            c = sourceCode.charAt(index);
+                                            if (stringType != 0) {
+                                                // Currently skipping a string.
+                                                if (c == stringType) {
+                                                    // End of string.
+                                                    stringType = 0;
+                                                } else if (c == '\\') {
+                                                    // Skip the next character after \.
+                                                    ++index;
+                                                }
+                                            } else {
+                                                switch (c) {
+                                                    // Increase or decrease the bracket levels if opening or
+                                                    // closing brackets are found.
+                                                    case '[':
+                                                        ++bracketLevels[0];
+                                                        break;
+                                                    case ']':
+                                                        --bracketLevels[0];
+                                                        break;
+                                                    case '{':
+                                                        ++bracketLevels[1];
+                                                        break;
+                                                    case '}':
+                                                        --bracketLevels[1];
+                                                        break;
+                                                    case '(':
+                                                        ++bracketLevels[2];
+                                                        break;
+                                                    case ')':
+                                                        --bracketLevels[2];
+                                                        break;
+                                                    // Go into string skipping mode if a ' or " is found.
+                                                    case '\'':
+                                                    case '"':
+                                                        stringType = c;
+                                                        break;
+                                                    case ',':
+                                                    case ';':
+                                                        // Checks if all the bracket levels are 0. If any aren't
+                                                        // 0, then the result of binary OR (|) won't be 0, so this
+                                                        // way all of them can be checked at once.
+                                                        if ((bracketLevels[0] | bracketLevels[1] | bracketLevels[2]) == 0) {
+                                                            // Not currently in any kind of brackets.
+                                                            if (c == ',') {
+                                                                // If a comma was found, then keep parsing the token.
+                                                                // This allows for field definitions like "int a = 1, b = 2;".
+                                                                continueParsing = true;
+                                                                // Continue building previous token.
+                                                                tokens.reopenLast();
+                                                            } else {
+                                                                // The semicollon at the end of the token has been reached.
+                                                                ++index;
+                                                            }
+                                                            // Successfully skipped to the first ',' or the end of the
+                                                            // statement, whichever came first.
+                                                            finished = true;
+                                                        }
+                                                        break;
+                                                    // Ignore any other kinds of characters.
+                                                }
+                                                // Exit the loop if a , or ; has been found.
+                                                if (finished)
+                                                    break;
+                                            }
+                                        }
+                                        break;
+                                    case '}':
+                                        if (inMethod && curlyBracketsLevel > 0) {
+                                            // If still within brackets inside a method (looking for
+                                            // variables), then just return to the parse loop and
+                                            // continue parsing.
+                                            --curlyBracketsLevel;
+                                        } else {
+                                            // Otherwise stop parsing the current class.
+                                            index = length;
+                                        }
+                                        break;
+                                    default:
+                                        break;
+                                }
+                                if (!continueParsing) {
+                                    // If a token was being built, then finish it.
+                                    if (tokens.pendingLength() > 0) {
+                                        tokens.finishPending();
+                                    }
+                                    // The tokens that were found are in the list.
+                                    return true;
+                                }
+                                break;
+                            }
+                        default:
+                            // Add the previous character to current token.
+                            tokens.append(c);
+                            ++index;
+                            break;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    // Parse a statement using a list of tokens. Strings are only created for
+    // names that end up in the parsed classes, and they are interned so that
+    // equal names share the same String object.
+    private void parseStatementTokens(TokenList tokens) {
+        Accessibility accessibility = Accessibility.PACKAGE;
+        boolean isFinal = false, isStatic = false;
+        for (int i = 0, numTokens = tokens.size(); i < numTokens; ++i) {
+            // Keywords are always in the symbol table, so this finds them without
+            // creating a string for the token.
+            String keyword = lookup(tokens, i);
+            switch (keyword == null ? "" : keyword) {
+                // Look for accessibility modifiers.
+                case "public":
+                    accessibility = Accessibility.PUBLIC;
+                    break;
+                case "private":
+                    accessibility = Accessibility.PRIVATE;
+                    break;
+                case "protected":
+                    accessibility = Accessibility.PROTECTED;
+                    break;
+                // Check if it is static.
+                case "static":
+                    isStatic = true;
+                    break;
+                // Check if it is final.
+                case "final":
+                    isFinal = true;
+                    break;
+                // Keep track of the package.
+                case "package":
+                    // Set package if there is a token after 'package'.
+                    if (++i < numTokens)
+                        currentPackage = intern(tokens, i);
+                    break;
+                // Keep track of imports.
+                case "import":
+                    // Import type if there is a token after 'import'.
+                    if (++i < numTokens) {
+                        int dotIndex = tokens.lastIndexOf(i, '.');
+                        if (dotIndex >= 0 && dotIndex == tokens.length(i) - 2 && tokens.chars()[tokens.start(i) + dotIndex + 1] == '*') {
+                            // Remember the package of a wildcard import, so that all the classes in it can
+                            // be found by their short name.
+                            listener.importPackage(symbols.intern(tokens.chars(), tokens.start(i), dotIndex));
+                        } else if (dotIndex >= 0) {
+                            // Let the part after the final dot be the 'nickname'.
+                            String shortName = symbols.intern(tokens.chars(), tokens.start(i) + dotIndex + 1, tokens.length(i) - dotIndex - 1);
+                            listener.importClass(shortName, intern(tokens, i));
+                        }
+                    }
+                    break;
+                // Start parsing a new class, enum or interface.
+                case "class":
+                case "enum":
+                case "interface":
+                    if (++i < numTokens) {
+                        String className = intern(tokens, i);
+                        // Back up information to return to after parsing the class (helps
+                        // deal with nested classes).
+                        int endIndex = index;
+                        Scope outerScope = currentScope;
+                        String previousPackage = currentPackage;
+                        // Go inside the current class (so a class within an outer class would have
+                        // a full name like package.OuterClass.InnerClass).
+                        currentPackage += "." + className;
+                        // Go to the code inside the brackets (where the class fields and such are).
+                        index = insideBracketsIndex;
+                        String superClassName = null;
+                        String[] interfaceNames = NO_NAMES;
+                        if (++i < numTokens && tokens.equals(i, "extends") && ++i < numTokens) {
+                            // Check for the extends keyword to add a superclass.
+                            superClassName = intern(tokens, i);
+                        } else {
+                            --i;
+                        }
+                        if (++i < numTokens && tokens.equals(i, "implements") && ++i < numTokens) {
+                            // Check for the implements keyword to add an interface.
+                            interfaceNames = new String[splitToken(tokens, i)];
+                            for (int part = 0; part < interfaceNames.length; ++part) {
+                                interfaceNames[part] = internPart(tokens, part);
+                            }
+                        }
+                        // Start the new class (at this point 'currentPackage' is the full name
+                        // of the class) and parse it.
+                        listener.startClass(className, currentPackage, keyword, superClassName, interfaceNames);
+                        currentScope = Scope.CLASS;
+                        parse();
+                        listener.endClass();
+                        // Return to parsing the outer class, if any.
+                        index = endIndex;
+                        currentPackage = previousPackage;
+                        currentScope = outerScope;
+                    }
+                    break;
+                default:
+                    if (inMethod) {
+                        if (i == 0 && IGNORED_KEYWORDS.contains(keyword)) {
+                            // Ignore the entire statement if it's inside a method and starts
+                            // with a keyword.
+                            return;
+                        }
+                    } else if (IGNORED_KEYWORDS.contains(keyword)) {
+                        // If not inside a method, then ignore certain keywords regardless of
+                        // position, but don't end the statement.
+                        break;
+                    }
+                    // Look for type or member name (identifier).
+                    // Members are only relevant inside classes.
+                    if (currentScope != Scope.FILE) {
+                        if (numTokens == 1) {
+                            // Add enum values, which may be separated by a ','.
+                            if (inMethod) {
+                                // Methods don't have enum values, so ignore the statement if the parser
+                                // is currently looking for variables in a method.
+                                return;
+                            }
+                            for (int part = 0, numParts = splitToken(tokens, i); part < numParts; ++part) {
+                                // Represent fields as enums with no type.
+                                listener.field(Accessibility.PUBLIC, internPart(tokens, part), null, false, false);
+                            }
+                        } else {
+                            // Remember which tokens hold the names, and only create strings for
+                            // them once it's clear that they are needed.
+                            int memberTypeToken = i;
+                            int memberNameToken;
+                            boolean isMethod = false;
+                            if (++i < numTokens) {
+                                if (tokens.equals(i, '(')) {
+                                    // If the identifier is followed directly by '(', it has no return type
+                                    // (it's a constructor).
+                                    memberNameToken = memberTypeToken;
+                                    memberTypeToken = -1;
+                                    --i;
+                                } else {
+                                    // Otherwise, the previous token was the return type or field type, meaning
+                                    // the next one is the name of the method or field.
+                                    memberNameToken = i;
+                                }
+                                if (++i < numTokens && tokens.equals(i, '(')) {
+                                    // If the next token exists and is '(', then parse the parameters.
+                                    if (inMethod) {
+                                        // But if it's already inside a method, then ignore the statement (as
+                                        // it's a method call instead of a definition).
+                                        return;
+                                    }
+                                    isMethod = true;
+                                    listener.startMethod(accessibility, intern(tokens, memberNameToken),
+                                            memberTypeToken == -1 ? null : intern(tokens, memberTypeToken), isFinal, isStatic);
+                                    // Keep going until end of statement or if ')' is found.
+                                    while (++i < numTokens && !tokens.equals(i, ')')) {
+                                        boolean isParameterFinal = tokens.equals(i, "final");
+                                        if (isParameterFinal) {
+                                            // Go to the next token and stop if it was the final token.
+                                            if (++i >= numTokens)
+                                                break;
+                                        }
+                                        String parameterName = null, parameterTypeName = null;
+                                        int varargIndex = tokens.indexOf(i, "...");
+                                        if (varargIndex != -1) {
+                                            // The tokenizer incorrectly turns things like "String... args"
+                                            // into a single token ("String...args"). Split them up again if
+                                            // that is the case.
+                                            int start = tokens.start(i);
+                                            parameterTypeName = symbols.intern(tokens.chars(), start, varargIndex + 3);
+                                            parameterName = symbols.intern(tokens.chars(), start + varargIndex + 3, tokens.length(i) - varargIndex - 3);
+                                        } else if (++i < numTokens) {
+                                            // Otherwise, the parameter name is the next token.
+                                            parameterTypeName = intern(tokens, i - 1);
+                                            parameterName = intern(tokens, i);
+                                        }
+                                        if (parameterName != null) {
+                                            // Add the parameter.
+                                            listener.parameter(parameterName, parameterTypeName, isParameterFinal);
+                                        }
+                                    }
+                                }
+                                if (!isMethod) {
+                                    // If no parameter list was found, then add fields instead, which may
+                                    // be separated by a ',' if multiple fields are declared at once (Like
+                                    // "int var1, var2, var3;"
+                                    String memberTypeName = null;
+                                    char[] chars = tokens.chars();
+                                    for (int part = 0, numParts = splitToken(tokens, memberNameToken); part < numParts; ++part) {
+                                        if (isJavaIdentifier(chars, partBounds[part * 2], partBounds[part * 2 + 1])) {
+                                            if (memberTypeName == null && memberTypeToken != -1) {
+                                                memberTypeName = intern(tokens, memberTypeToken);
+                                            }
+                                            String memberName = internPart(tokens, part);
+                                            if (currentScope == Scope.METHOD) {
+                                                listener.localVariable(memberName, memberTypeName, isFinal);
+                                            } else {
+                                                listener.field(accessibility, memberName, memberTypeName, isFinal, isStatic);
+                                            }
+                                        }
+                                    }
+                                } else {
+                                    // Otherwise, look for the variables of the method that was started.
+                                    int endIndex = index;
+                                    index = insideBracketsIndex;
+                                    inMethod = true;
+                                    Scope outerScope = currentScope;
+                                    currentScope = Scope.METHOD;
+                                    curlyBracketsLevel = 0;
+                                    parse();
+                                    currentScope = outerScope;
+                                    listener.endMethod();
+                                    inMethod = false;
+                                    index = endIndex;
+                                }
+                                return;
+                            }
+                        }
+                    }
+                    break;
+            }
+        }
+    }
+
+    // Kinds of code that statements can belong to.
+    private enum Scope {
+        FILE,
+        CLASS,
+        METHOD
+    }
+
+    // Return the interned string for a token if it is a keyword or a name that
+    // has been interned before, or null otherwise. Never creates a string.
+    private String lookup(TokenList tokens, int tokenIndex) {
+        return symbols.lookup(tokens.chars(), tokens.start(tokenIndex), tokens.length(tokenIndex));
+    }
+
+    // Return the interned string for a token.
+    private String intern(TokenList tokens, int tokenIndex) {
+        return symbols.intern(tokens.chars(), tokens.start(tokenIndex), tokens.length(tokenIndex));
+    }
+
+    // Return whether or not a token is one of the keywords that should be ignored.
+    private boolean isIgnoredKeyword(TokenList tokens, int tokenIndex) {
+        return IGNORED_KEYWORDS.contains(lookup(tokens, tokenIndex));
+    }
+
+    // Split a token up at every ',' the same way String.split(",") does (empty
+    // parts at the end are left out). The start and end offset of each part are
+    // stored in 'partBounds'. Returns the number of parts.
+    private int splitToken(TokenList tokens, int tokenIndex) {
+        char[] chars = tokens.chars();
+        int start = tokens.start(tokenIndex);
+        int end = start + tokens.length(tokenIndex);
+        while (end > start && chars[end - 1] == ',') {
+            --end;
+        }
+        int numParts = 0;
+        for (int partStart = start; partStart < end; ) {
+            int partEnd = partStart;
+            while (partEnd < end && chars[partEnd] != ',') {
+                ++partEnd;
+            }
+            if (numParts * 2 == partBounds.length) {
+                partBounds = Arrays.copyOf(partBounds, partBounds.length * 2);
+            }
+            partBounds[numParts * 2] = partStart;
+            partBounds[numParts * 2 + 1] = partEnd;
+            ++numParts;
+            partStart = partEnd + 1;
+        }
+        return numParts;
+    }
+
+    // Return the interned string for a part found by splitToken.
+    private String internPart(TokenList tokens, int partIndex) {
+        int start = partBounds[partIndex * 2];
+        return symbols.intern(tokens.chars(), start, partBounds[partIndex * 2 + 1] - start);
+    }
+
+    // Returns whether or not the characters from 'start' to 'end' form a valid
+    // Java identifier.
+    private static boolean isJavaIdentifier(char[] chars, int start, int end) {
+        for (int i = start; i < end; ++i) {
+            char character = chars[i];
+            if ((i == start && !Character.isJavaIdentifierStart(character)) ||
+                (i != start && !Character.isJavaIdentifierPart(character))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,231 @@
+package javaprojectview.uml;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+
+// Uniform grid of square cells that stores the bounds of numbered items (like
+// panels or relations), so that the items in a small area can be found without
+// looking at all of them. An item is stored in every cell that its bounds
+// touch. Lines (like relations between panels) are only stored in the cells
+// that they pass through, instead of every cell of their bounds, since a long
+// diagonal line touches far fewer cells than its bounds cover. Items are
+// identified by their index, which should be small, since the results of a
+// query are collected in a BitSet.
+public class SpatialGrid {
+
+    private final int cellSize;
+    // Items in each cell, with the cell's column and row packed into the key.
+    private final HashMap<Long, ArrayList<Integer>> cells;
+    // Bounds of each item, or null if the item isn't in the grid.
+    private final ArrayList<Rectangle> itemBounds;
+    // Keys of the cells that each item is stored in, or null if the item
+    // isn't in the grid.
+    private final ArrayList<long[]> itemCells;
+
+    public SpatialGrid(int cellSize) {
+        if (cellSize <= 0) {
+            throw new IllegalArgumentException("Cell size must be positive: " + cellSize);
+        }
+        this.cellSize = cellSize;
+        cells = new HashMap<>();
+        itemBounds = new ArrayList<>();
+        itemCells = new ArrayList<>();
+    }
+
+    // Store an item with the given bounds, or move it there if it was already
+    // stored. Empty bounds are stored too, so that the item can still be found
+    // at its position.
+    public void update(int item, Rectangle bounds) {
+        if (item < itemBounds.size() && bounds.equals(itemBounds.get(item)) && itemCells.get(item) != null) {
+            return;
+        }
+        int firstColumn = getFirstCell(bounds.x);
+        int firstRow = getFirstCell(bounds.y);
+        int numColumns = getLastCell(bounds.x, bounds.width) - firstColumn + 1;
+        int numRows = getLastCell(bounds.y, bounds.height) - firstRow + 1;
+        long[] cellKeys = new long[numColumns * numRows];
+        for (int row = 0; row < numRows; ++row) {
+            for (int column = 0; column < numColumns; ++column) {
+                cellKeys[row * numColumns + column] = getKey(firstColumn + column, firstRow + row);
+            }
+        }
+        store(item, new Rectangle(bounds), cellKeys);
+    }
+
+    // Store an item that is a line from (x1, y1) to (x2, y2), or move it
+    // there if it was already stored. The item is only put in the cells that
+    // the line passes through, but its bounds (which query checks) are the
+    // bounds of the whole line, so a query may also return lines that pass
+    // close to the area. Anything drawn around the line (like an arrow head)
+    // isn't included, so queries should grow their area to make up for it.
+    public void updateLine(int item, int x1, int y1, int x2, int y2) {
+        int minX = Math.min(x1, x2);
+        int maxX = Math.max(x1, x2);
+        long[] cellKeys = new long[16];
+        int numCells = 0;
+        for (int column = getFirstCell(minX), lastColumn = getFirstCell(maxX); column <= lastColumn; ++column) {
+            // Find the rows that the part of the line within this column
+            // passes through.
+            double left = Math.max((double) column * cellSize, minX);
+            double right = Math.min((column + 1.0) * cellSize, maxX);
+            double leftY = y1;
+            double rightY = y2;
+            if (x1 != x2) {
+                double slope = (double) (y2 - y1) / (x2 - x1);
+                leftY = y1 + (left - x1) * slope;
+                rightY = y1 + (right - x1) * slope;
+            }
+            int firstRow = getFirstCell((int) Math.floor(Math.min(leftY, rightY)));
+            int lastRow = getFirstCell((int) Math.ceil(Math.max(leftY, rightY)));
+            for (int row = firstRow; row <= lastRow; ++row) {
+                if (numCells == cellKeys.length) {
+                    cellKeys = Arrays.copyOf(cellKeys, numCells * 2);
+                }
+                cellKeys[numCells++] = getKey(column, row);
+            }
+        }
+        Rectangle bounds = new Rectangle(minX, Math.min(y1, y2), maxX - minX, Math.abs(y2 - y1));
+        store(item, bounds, Arrays.copyOf(cellKeys, numCells));
+    }
+
+    // Remove an item from the grid. Does nothing if it isn't in the grid.
+    public void remove(int item) {
+        if (item < itemBounds.size()) {
+            long[] cellKeys = itemCells.get(item);
+            if (cellKeys != null) {
+                removeFromCells(item, cellKeys);
+                itemBounds.set(item, null);
+                itemCells.set(item, null);
+            }
+        }
+    }
+
+    // Remove all items.
+    public void clear() {
+        cells.clear();
+        itemBounds.clear();
+        itemCells.clear();
+    }
+
+    // Return the items whose bounds intersect the area, in order of their
+    // index. Items with empty bounds are returned if their position lies in
+    // the area.
+    public BitSet query(Rectangle area) {
+        BitSet result = new BitSet();
+        if (area.width <= 0 || area.height <= 0) {
+            return result;
+        }
+        // Don't look up more cells than there are, when the area is much larger
+        // than the items (like when the whole diagram is exported).
+        long numAreaCells = (long) (getLastCell(area.x, area.width) - getFirstCell(area.x) + 1)
+                          * (getLastCell(area.y, area.height) - getFirstCell(area.y) + 1);
+        if (numAreaCells > cells.size()) {
+            for (int item = 0; item < itemBounds.size(); ++item) {
+                Rectangle bounds = itemBounds.get(item);
+                if (bounds != null && intersects(bounds, area)) {
+                    result.set(item);
+                }
+            }
+            return result;
+        }
+        BitSet checked = new BitSet();
+        for (int row = getFirstCell(area.y), lastRow = getLastCell(area.y, area.height); row <= lastRow; ++row) {
+            for (int column = getFirstCell(area.x), lastColumn = getLastCell(area.x, area.width); column <= lastColumn; ++column) {
+                ArrayList<Integer> items = cells.get(getKey(column, row));
+                if (items == null) {
+                    continue;
+                }
+                for (int item : items) {
+                    // Items that span multiple cells only need to be checked once.
+                    if (!checked.get(item)) {
+                        checked.set(item);
+                        if (intersects(itemBounds.get(item), area)) {
+                            result.set(item);
+                        }
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    // Return whether no item intersects the area. This is faster than checking
+    // whether query returns an empty set, since it stops at the first item.
+    public boolean isEmpty(Rectangle area) {
+        for (int row = getFirstCell(area.y), lastRow = getLastCell(area.y, area.height); row <= lastRow; ++row) {
+            for (int column = getFirstCell(area.x), lastColumn = getLastCell(area.x, area.width); column <= lastColumn; ++column) {
+                ArrayList<Integer> items = cells.get(getKey(column, row));
+                if (items == null) {
+                    continue;
+                }
+                for (int item : items) {
+                    if (intersects(itemBounds.get(item), area)) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    // Put an item in the given cells, and take it out of the cells that it
+    // was in before (unless those are the same cells).
+    private void store(int item, Rectangle bounds, long[] cellKeys) {
+        long[] oldCellKeys = item < itemCells.size() ? itemCells.get(item) : null;
+        if (oldCellKeys != null) {
+            if (Arrays.equals(oldCellKeys, cellKeys)) {
+                // The item stays in the same cells, so only its bounds change.
+                itemBounds.set(item, bounds);
+                return;
+            }
+            removeFromCells(item, oldCellKeys);
+        }
+        while (itemBounds.size() <= item) {
+            itemBounds.add(null);
+            itemCells.add(null);
+        }
+        itemBounds.set(item, bounds);
+        itemCells.set(item, cellKeys);
+        for (long cellKey : cellKeys) {
+            cells.computeIfAbsent(cellKey, (Long key) -> new ArrayList<>()).add(item);
+        }
+    }
+
+    private void removeFromCells(int item, long[] cellKeys) {
+        for (long cellKey : cellKeys) {
+            ArrayList<Integer> items = cells.get(cellKey);
+            if (items != null) {
+                items.remove((Integer) item);
+                if (items.isEmpty()) {
+                    cells.remove(cellKey);
+                }
+            }
+        }
+    }
+
+    // Unlike Rectangle.intersects, this also accepts bounds with a width or
+    // height of 0 (like a vertical relation between two panels).
+    private static boolean intersects(Rectangle bounds, Rectangle area) {
+        return bounds.x < area.x + area.width && area.x <= bounds.x + bounds.width
+            && bounds.y < area.y + area.height && area.y <= bounds.y + bounds.height;
+    }
+
+    private int getFirstCell(int position) {
+        return Math.floorDiv(position, cellSize);
+    }
+
+    private int getLastCell(int position, int size) {
+        return Math.floorDiv(position + Math.max(size, 0), cellSize);
+    }
+
+    // Pack the column and row into a key. Long.hashCode combines the two halves
+    // with xor, which would give all cells with the same column ^ row (like a
+    // whole diagonal) the same hash, so the packed value is multiplied by an
+    // odd number to spread them out. That keeps every key unique.
+    private static long getKey(int column, int row) {
+        return (((long) column << 32) | (row & 0xFFFFFFFFL)) * 0x9E3779B97F4A7C15L;
+    }
+}
@@ -0,0 +1,165 @@
+package javaprojectview.graphics;
+
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javaprojectview.Settings;
+
+// Writes an SVG image one shape at a time, straight to the output, so that the
+// size of the file and the time it takes only depend on the number of shapes
+// and not on the size of the image. Shapes that look the same (same color,
+// font, line style) share a CSS class instead of repeating their style. The
+// style sheet is written at the end, once all the classes are known; CSS in
+// an SVG file applies to the whole image, wherever the style element is.
+public class SvgWriter implements Closeable {
+
+    private final Writer output;
+    // CSS class names of the styles that were used so far, by their
+    // declarations.
+    private final LinkedHashMap<String, String> styleClasses;
+
+    // Start writing an image of the given area. Shapes are given in the same
+    // coordinates as the area, so (bounds.x, bounds.y) is the top left corner
+    // of the image. The output is closed when the writer is closed.
+    public SvgWriter(OutputStream output, Rectangle bounds) throws IOException {
+        this.output = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8), 1 << 16);
+        styleClasses = new LinkedHashMap<>();
+        this.output.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        this.output.write("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"" + bounds.width + "\" height=\"" + bounds.height
+                        + "\" viewBox=\"" + bounds.x + " " + bounds.y + " " + bounds.width + " " + bounds.height
+                        + "\" xml:space=\"preserve\">\n");
+    }
+
+    // Fill a rectangle with a color.
+    public void fillRect(float x, float y, float width, float height, Color color) throws IOException {
+        output.write("<rect x=\"" + formatNumber(x) + "\" y=\"" + formatNumber(y)
+                   + "\" width=\"" + formatNumber(width) + "\" height=\"" + formatNumber(height)
+                   + "\" class=\"" + getFillClass(color) + "\"/>\n");
+    }
+
+    // Draw a line. If dashLength is greater than 0, the line is dashed with
+    // dashes and gaps of that length.
+    public void drawLine(int x1, int y1, int x2, int y2, Color color, float lineWidth, float dashLength) throws IOException {
+        output.write("<line x1=\"" + x1 + "\" y1=\"" + y1 + "\" x2=\"" + x2 + "\" y2=\"" + y2
+                   + "\" class=\"" + getStrokeClass(color, lineWidth, dashLength) + "\"/>\n");
+    }
+
+    // Draw lines through a list of points.
+    public void drawPolyline(int[] xPoints, int[] yPoints, int numPoints, Color color, float lineWidth) throws IOException {
+        output.write("<polyline points=\"" + formatPoints(xPoints, yPoints, numPoints)
+                   + "\" class=\"" + getStrokeClass(color, lineWidth, 0.0f) + "\"/>\n");
+    }
+
+    // Fill a polygon with a color.
+    public void fillPolygon(int[] xPoints, int[] yPoints, int numPoints, Color color) throws IOException {
+        output.write("<polygon points=\"" + formatPoints(xPoints, yPoints, numPoints)
+                   + "\" class=\"" + getFillClass(color) + "\"/>\n");
+    }
+
+    // Draw a piece of text with its baseline at y. The weight is a CSS font
+    // weight, like 400 for regular and 700 for bold text.
+    public void drawText(String text, int x, int y, float fontSize, int weight, boolean italic, Color color) throws IOException {
+        String declarations = "fill:" + formatColor(color) + ";font-size:" + formatNumber(fontSize) + "px"
+                            + (weight != 400 ? ";font-weight:" + weight : "")
+                            + (italic ? ";font-style:italic" : "");
+        output.write("<text x=\"" + x + "\" y=\"" + y + "\" class=\"" + getStyleClass(declarations) + "\">");
+        writeEscaped(text);
+        output.write("</text>\n");
+    }
+
+    // Write the style sheet and finish the image, and close the output.
+    @Override
+    public void close() throws IOException {
+        try {
+            String fontFamily = Settings.getInstance().getRegularFont().getFamily();
+            output.write("<style>\n");
+            output.write("text{font-family:'" + fontFamily + "',monospace;white-space:pre}\n");
+            for (Map.Entry<String, String> entry : styleClasses.entrySet()) {
+                output.write("." + entry.getValue() + "{" + entry.getKey() + "}\n");
+            }
+            output.write("</style>\n");
+            output.write("</svg>\n");
+        } finally {
+            output.close();
+        }
+    }
+
+    private String getFillClass(Color color) {
+        return getStyleClass("fill:" + formatColor(color));
+    }
+
+    private String getStrokeClass(Color color, float lineWidth, float dashLength) {
+        // Solid lines have square ends and dashed lines have flat ends, like
+        // the strokes that the diagram is painted with.
+        return getStyleClass("fill:none;stroke:" + formatColor(color) + ";stroke-width:" + formatNumber(lineWidth)
+                           + (dashLength > 0.0f ? ";stroke-dasharray:" + formatNumber(dashLength) : ";stroke-linecap:square"));
+    }
+
+    // Return the name of the CSS class with the given declarations, and make
+    // a new class if no shape used them before.
+    private String getStyleClass(String declarations) {
+        String name = styleClasses.get(declarations);
+        if (name == null) {
+            name = "s" + styleClasses.size();
+            styleClasses.put(declarations, name);
+        }
+        return name;
+    }
+
+    // Write text with the characters that have a meaning in XML escaped.
+    // Control characters aren't allowed in XML at all, so they are left out.
+    private void writeEscaped(String text) throws IOException {
+        for (int i = 0, length = text.length(); i < length; ++i) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '&':
+                    output.write("&amp;");
+                    break;
+                case '<':
+                    output.write("&lt;");
+                    break;
+                case '>':
+                    output.write("&gt;");
+                    break;
+                default:
+                    if (c >= ' ' || c == '\t') {
+                        output.write(c);
+                    }
+                    break;
+            }
+        }
+    }
+
+    private static String formatPoints(int[] xPoints, int[] yPoints, int numPoints) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < numPoints; ++i) {
+            if (i > 0) {
+                builder.append(' ');
+            }
+            builder.append(xPoints[i]).append(',').append(yPoints[i]);
+        }
+        return builder.toString();
+    }
+
+    private static String formatColor(Color color) {
+        return String.format("#%06x", color.getRGB() & 0xFFFFFF);
+    }
+
+    // Format a number with at most two decimals, and without any decimals if
+    // it's a whole number.
+    private static String formatNumber(float value) {
+        double rounded = Math.round(value * 100.0) / 100.0;
+        if (rounded == (long) rounded) {
+            return Long.toString((long) rounded);
+        }
+        return Double.toString(rounded);
+    }
+}
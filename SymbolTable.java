@@ -0,0 +1,126 @@
+package javaprojectview.parser;
+
+// Table of interned strings that can be searched using a range of characters,
+// so that a String only has to be created the first time a name is seen.
+// Strings that are equal are always returned as the same String object.
+class SymbolTable {
+
+    // Open addressing hash table (linear probing). Its length is always a power
+    // of two and it is never more than half full.
+    private String[] table;
+    // Number of strings in the table.
+    private int size;
+    // Copy of the table when mark was last called, and its size at that time.
+    private String[] markedTable;
+    private int markedSize;
+
+    // Create the object.
+    SymbolTable() {
+        table = new String[1024];
+    }
+
+    // Add a string to the table (if it isn't already in it) and return the
+    // interned version.
+    String add(String text) {
+        int mask = table.length - 1;
+        int slot = text.hashCode() & mask;
+        String entry;
+        while ((entry = table[slot]) != null) {
+            if (entry.equals(text)) {
+                return entry;
+            }
+            slot = (slot + 1) & mask;
+        }
+        insert(slot, text);
+        return text;
+    }
+
+    // Return the interned string with the given characters, or null if there is
+    // no such string in the table. Never creates any objects.
+    String lookup(char[] chars, int offset, int length) {
+        int mask = table.length - 1;
+        int slot = hash(chars, offset, length) & mask;
+        String entry;
+        while ((entry = table[slot]) != null) {
+            if (matches(entry, chars, offset, length)) {
+                return entry;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    // Return the interned string with the given characters, creating it if it
+    // isn't in the table yet.
+    String intern(char[] chars, int offset, int length) {
+        int mask = table.length - 1;
+        int slot = hash(chars, offset, length) & mask;
+        String entry;
+        while ((entry = table[slot]) != null) {
+            if (matches(entry, chars, offset, length)) {
+                return entry;
+            }
+            slot = (slot + 1) & mask;
+        }
+        String text = new String(chars, offset, length);
+        insert(slot, text);
+        return text;
+    }
+
+    // Remember the strings that are currently in the table, so that reset can
+    // remove everything that is added after them.
+    void mark() {
+        markedTable = table.clone();
+        markedSize = size;
+    }
+
+    // Remove all strings that were added since mark was called, so that the
+    // table no longer keeps them alive.
+    void reset() {
+        if (size != markedSize) {
+            table = markedTable.clone();
+            size = markedSize;
+        }
+    }
+
+    // Put a string in an empty slot, growing the table if it gets too full.
+    private void insert(int slot, String text) {
+        table[slot] = text;
+        if (++size * 2 > table.length) {
+            String[] oldTable = table;
+            table = new String[oldTable.length * 2];
+            int mask = table.length - 1;
+            for (String entry : oldTable) {
+                if (entry != null) {
+                    int newSlot = entry.hashCode() & mask;
+                    while (table[newSlot] != null) {
+                        newSlot = (newSlot + 1) & mask;
+                    }
+                    table[newSlot] = entry;
+                }
+            }
+        }
+    }
+
+    // Compute the same hash code that String.hashCode would return for the
+    // characters, so both can be used to look up the same slot.
+    private static int hash(char[] chars, int offset, int length) {
+        int hash = 0;
+        for (int i = offset, end = offset + length; i < end; ++i) {
+            hash = 31 * hash + chars[i];
+        }
+        return hash;
+    }
+
+    private static boolean matches(String entry, char[] chars, int offset, int length) {
+        if (entry.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; ++i) {
+            if (entry.charAt(i) != chars[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,215 @@
+package javaprojectview.graphics;
+
+import java.awt.Image;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javaprojectview.Settings;
+import javaprojectview.Theme;
+
+// Cache for images of text, so that text that appears in many places (like
+// "public", " : " or "String") or at a font size that was used before is only
+// painted once. There is one tier for the images of single text parts and one
+// for the images of whole lines of text. Each tier holds at most a fixed number
+// of bytes of pixels, and removes the images that were used least recently
+// when it's full. The cache can be used by multiple threads at once.
+public class TextImageCache {
+
+    // Default maximum number of bytes of pixels in each tier.
+    private static final long DEFAULT_MAX_PART_BYTES = 16L << 20;
+    private static final long DEFAULT_MAX_LINE_BYTES = 64L << 20;
+
+    // Images are stored with 4 bytes per pixel. Every entry is counted as at
+    // least this many bytes, so that empty images also take up space.
+    private static final int BYTES_PER_PIXEL = 4;
+    private static final int MIN_ENTRY_BYTES = 64;
+
+    private static class InstanceHolder {
+
+        private static final TextImageCache INSTANCE = new TextImageCache(DEFAULT_MAX_PART_BYTES, DEFAULT_MAX_LINE_BYTES);
+    }
+
+    private final Tier partTier;
+    private final Tier lineTier;
+
+    // Return the cache that is shared by all the text in the program.
+    public static TextImageCache getInstance() {
+        return InstanceHolder.INSTANCE;
+    }
+
+    // Create a cache that holds at most the given number of bytes of pixels in
+    // each tier.
+    public TextImageCache(long maxPartBytes, long maxLineBytes) {
+        partTier = new Tier(maxPartBytes);
+        lineTier = new Tier(maxLineBytes);
+    }
+
+    // Return the image of a text part at a font size, painting it if it isn't
+    // in the cache yet.
+    public Image getPartImage(SmartTextPart part, float fontSize) {
+        TextKey key = new TextKey(part, fontSize, Settings.getInstance().getTheme());
+        Image image = partTier.get(key);
+        if (image == null) {
+            image = part.paintImage(fontSize);
+            partTier.put(key, image);
+        }
+        return image;
+    }
+
+    // Return the image of a line of text at a font size. If it isn't in the
+    // cache yet, it is put together from the images of its parts.
+    public Image getLineImage(SmartText text, float fontSize) {
+        List<SmartTextPart> parts = text.getParts();
+        Theme theme = Settings.getInstance().getTheme();
+        Image image = lineTier.get(new TextKey(parts, fontSize, theme));
+        if (image == null) {
+            image = text.composeImage(fontSize, this);
+            // The text can still be changed, so store a copy of the parts in the key.
+            lineTier.put(new TextKey(new ArrayList<>(parts), fontSize, theme), image);
+        }
+        return image;
+    }
+
+    // Return the tier for the images of single text parts.
+    public Tier getPartTier() {
+        return partTier;
+    }
+
+    // Return the tier for the images of whole lines.
+    public Tier getLineTier() {
+        return lineTier;
+    }
+
+    // Remove all images (for example, because the colors changed). The
+    // counters are kept.
+    public void clear() {
+        partTier.clear();
+        lineTier.clear();
+    }
+
+    // Images of text of one kind, with the least recently used image first.
+    public static class Tier {
+
+        private final LinkedHashMap<TextKey, Image> images;
+        private final long maxBytes;
+        private long bytes;
+        private long hits;
+        private long misses;
+        private long evictions;
+
+        Tier(long maxBytes) {
+            images = new LinkedHashMap<>(256, 0.75f, true);
+            this.maxBytes = maxBytes;
+        }
+
+        synchronized Image get(TextKey key) {
+            Image image = images.get(key);
+            if (image == null) {
+                ++misses;
+            } else {
+                ++hits;
+            }
+            return image;
+        }
+
+        synchronized void put(TextKey key, Image image) {
+            long imageBytes = getByteCount(image);
+            if (imageBytes > maxBytes) {
+                // Don't throw everything else out for a single image.
+                return;
+            }
+            Image previous = images.put(key, image);
+            if (previous != null) {
+                // Another thread painted the same image in the meantime.
+                bytes -= getByteCount(previous);
+            }
+            bytes += imageBytes;
+            // Remove the least recently used images until everything fits.
+            Iterator<Map.Entry<TextKey, Image>> iterator = images.entrySet().iterator();
+            while (bytes > maxBytes && iterator.hasNext()) {
+                bytes -= getByteCount(iterator.next().getValue());
+                iterator.remove();
+                ++evictions;
+            }
+        }
+
+        synchronized void clear() {
+            images.clear();
+            bytes = 0;
+        }
+
+        // Return the number of times an image was found in this tier.
+        public synchronized long getHits() {
+            return hits;
+        }
+
+        // Return the number of times an image had to be painted.
+        public synchronized long getMisses() {
+            return misses;
+        }
+
+        // Return the number of images that were removed to make room.
+        public synchronized long getEvictions() {
+            return evictions;
+        }
+
+        // Return the number of images in this tier.
+        public synchronized int getSize() {
+            return images.size();
+        }
+
+        // Return the number of bytes of pixels of the images in this tier.
+        public synchronized long getBytes() {
+            return bytes;
+        }
+
+        // Return the maximum number of bytes of pixels in this tier.
+        public long getMaxBytes() {
+            return maxBytes;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return images.size() + " images, " + (bytes >> 10) + " KiB, " + hits + " hits, " + misses + " misses, " + evictions + " evictions";
+        }
+
+        private static long getByteCount(Image image) {
+            return Math.max((long) image.getWidth(null) * image.getHeight(null) * BYTES_PER_PIXEL, MIN_ENTRY_BYTES);
+        }
+    }
+
+    // Key of an image: the text part or the list of text parts (which include
+    // the text, the style and the color names), the font size and the theme.
+    // Images that were painted with another theme are never found, even if
+    // they were put in the cache after the theme changed.
+    private static class TextKey {
+
+        private final Object text;
+        private final float fontSize;
+        private final Theme theme;
+        private final int hash;
+
+        TextKey(Object text, float fontSize, Theme theme) {
+            this.text = text;
+            this.fontSize = fontSize;
+            this.theme = theme;
+            hash = text.hashCode() * 31 + Float.floatToIntBits(fontSize);
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (!(object instanceof TextKey)) {
+                return false;
+            }
+            TextKey other = (TextKey) object;
+            return hash == other.hash && fontSize == other.fontSize && theme == other.theme && text.equals(other.text);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
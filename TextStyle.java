@@ -0,0 +1,54 @@
+package javaprojectview.graphics;
+
+import java.awt.Color;
+import javaprojectview.Theme;
+
+// Colors and font style of a text part, looked up in a theme once, so that
+// painting and measuring the text part doesn't have to look up its color
+// names again. A handle never changes, so it can be used by multiple threads
+// at once; when the theme changes, the text part makes a new handle.
+public final class TextStyle {
+
+    private final Theme theme;
+    private final boolean bold;
+    private final boolean italic;
+    private final Color color;
+    // Null if the text isn't underlined.
+    private final Color underlineColor;
+    // Font of the size that was asked for last, since a text part is usually
+    // measured and painted at the same size a few times in a row.
+    private volatile Theme.FontStyle lastFontStyle;
+
+    public TextStyle(Theme theme, boolean bold, boolean italic, String colorNames, String underlineColorNames) {
+        this.theme = theme;
+        this.bold = bold;
+        this.italic = italic;
+        color = theme.getColor(colorNames);
+        underlineColor = underlineColorNames == null ? null : theme.getColor(underlineColorNames);
+    }
+
+    // Return the theme that the colors were looked up in.
+    public Theme getTheme() {
+        return theme;
+    }
+
+    public Color getColor() {
+        return color;
+    }
+
+    // Return the color of the line under the text, or null if the text isn't
+    // underlined.
+    public Color getUnderlineColor() {
+        return underlineColor;
+    }
+
+    // Return the font of the text at a font size.
+    public Theme.FontStyle getFontStyle(float fontSize) {
+        Theme.FontStyle fontStyle = lastFontStyle;
+        if (fontStyle == null || fontStyle.getFont().getSize2D() != fontSize) {
+            fontStyle = theme.getFontStyle(fontSize, bold, italic);
+            lastFontStyle = fontStyle;
+        }
+        return fontStyle;
+    }
+}
@@ -0,0 +1,151 @@
+package javaprojectview;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Colors and fonts that the diagram is painted with. A theme never changes
+// after it's created, so it can be used by multiple threads at once. Lists of
+// color names are only split the first time they're used, and each font is
+// only derived (and measured) once for every size and style; after that they
+// are found in a map. Settings.setTheme switches to another theme.
+public final class Theme {
+
+    private final Map<String, Color> colors;
+    private final Font regularFont, boldFont, italicFont, boldItalicFont, semiboldFont, semiboldItalicFont;
+    private final Map<?, ?> desktopHints;
+    // Colors that were found for lists of color names. The map can't hold a
+    // null key, so the foreground color is used for null.
+    private final ConcurrentHashMap<String, Color> resolvedColors;
+    // Fonts that were derived for a size and style, by getFontKey.
+    private final ConcurrentHashMap<Long, FontStyle> fontStyles;
+
+    // Create a theme with the given colors (by name) and fonts. The fonts may
+    // be of any size. The desktop hints are used to measure text, and may be
+    // null.
+    public Theme(Map<String, Color> colors, Font regularFont, Font boldFont, Font italicFont, Font boldItalicFont,
+            Font semiboldFont, Font semiboldItalicFont, Map<?, ?> desktopHints) {
+        this.colors = new HashMap<>(colors);
+        this.regularFont = regularFont;
+        this.boldFont = boldFont;
+        this.italicFont = italicFont;
+        this.boldItalicFont = boldItalicFont;
+        this.semiboldFont = semiboldFont;
+        this.semiboldItalicFont = semiboldItalicFont;
+        this.desktopHints = desktopHints;
+        resolvedColors = new ConcurrentHashMap<>();
+        fontStyles = new ConcurrentHashMap<>();
+    }
+
+    // Return a theme with the same fonts as this one, but other colors.
+    public Theme withColors(Map<String, Color> colors) {
+        return new Theme(colors, regularFont, boldFont, italicFont, boldItalicFont, semiboldFont, semiboldItalicFont, desktopHints);
+    }
+
+    // Return the first available color in a list of color names, or the
+    // foreground color (see Settings.getColor).
+    public Color getColor(String names) {
+        if (names == null) {
+            return colors.get("foreground");
+        }
+        Color color = resolvedColors.get(names);
+        if (color == null) {
+            color = resolveColor(names);
+            if (color != null) {
+                resolvedColors.put(names, color);
+            }
+        }
+        return color;
+    }
+
+    // Return the font of the given size and style, with its metrics.
+    public FontStyle getFontStyle(float fontSize, boolean bold, boolean italic) {
+        return fontStyles.computeIfAbsent(getFontKey(fontSize, bold, italic), (Long key) -> {
+            return new FontStyle(deriveFont(fontSize, bold, italic), bold ? 700 : fontSize <= 8.0f ? 600 : 400);
+        });
+    }
+
+    public Font getRegularFont() {
+        return regularFont;
+    }
+
+    public Font getBoldFont() {
+        return boldFont;
+    }
+
+    public Font getItalicFont() {
+        return italicFont;
+    }
+
+    public Font getBoldItalicFont() {
+        return boldItalicFont;
+    }
+
+    private Color resolveColor(String names) {
+        // Split the string up based on the separators.
+        for (String name : names.split("[/,;:\\s]")) {
+            Color color = colors.get(name);
+            if (color != null) {
+                // If the color exists, return it.
+                return color;
+            }
+        }
+        return colors.get("foreground");
+    }
+
+    private Font deriveFont(float fontSize, boolean bold, boolean italic) {
+        Font baseFont;
+        if (bold) {
+            baseFont = italic ? boldItalicFont : boldFont;
+        } else if (fontSize <= 8.0f) {
+            // Use semibold fonts for small text for increased readability.
+            baseFont = italic ? semiboldItalicFont : semiboldFont;
+        } else {
+            baseFont = italic ? italicFont : regularFont;
+        }
+        return baseFont.deriveFont(fontSize);
+    }
+
+    private static long getFontKey(float fontSize, boolean bold, boolean italic) {
+        return ((long) Float.floatToIntBits(fontSize) << 2) | (bold ? 2 : 0) | (italic ? 1 : 0);
+    }
+
+    // A font of a specific size and style, with the metrics that text in it is
+    // measured with.
+    public final class FontStyle {
+
+        private final Font font;
+        private final FontMetrics metrics;
+        private final int weight;
+
+        private FontStyle(Font font, int weight) {
+            this.font = font;
+            this.weight = weight;
+            Graphics2D graphics = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB).createGraphics();
+            if (desktopHints != null) {
+                graphics.addRenderingHints(desktopHints);
+            }
+            metrics = graphics.getFontMetrics(font);
+            graphics.dispose();
+        }
+
+        public Font getFont() {
+            return font;
+        }
+
+        public FontMetrics getMetrics() {
+            return metrics;
+        }
+
+        // Return the CSS weight of the font: 700 for bold, 600 for semibold
+        // and 400 for regular text.
+        public int getWeight() {
+            return weight;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package javaprojectview.parser;
+
+import java.util.Arrays;
+
+// Reusable list of tokens for a single statement. Instead of creating a String
+// for every token, the characters of all tokens are stored one after another in
+// a single character buffer, and each token is described by its start offset
+// and length in that buffer. The last token can still be extended after it has
+// been finished, since it always sits at the end of the buffer.
+class TokenList {
+
+    // Characters of all the tokens, followed by the token being built.
+    private char[] chars;
+    // Start offset of every finished token.
+    private int[] starts;
+    // Length of every finished token.
+    private int[] lengths;
+    // Number of finished tokens.
+    private int size;
+    // Start offset of the token that is currently being built.
+    private int pendingStart;
+    // Number of characters in use (including the token being built).
+    private int charCount;
+
+    // Create the object.
+    TokenList() {
+        chars = new char[256];
+        starts = new int[16];
+        lengths = new int[16];
+    }
+
+    // Remove all tokens, keeping the buffers for the next statement.
+    void clear() {
+        size = 0;
+        pendingStart = 0;
+        charCount = 0;
+    }
+
+    // Return the number of finished tokens.
+    int size() {
+        return size;
+    }
+
+    // Return the buffer that the tokens are stored in.
+    char[] chars() {
+        return chars;
+    }
+
+    // Return the start offset of a token in the buffer.
+    int start(int tokenIndex) {
+        return starts[tokenIndex];
+    }
+
+    // Return the length of a token.
+    int length(int tokenIndex) {
+        return lengths[tokenIndex];
+    }
+
+    // Return whether or not a token consists of exactly the given text.
+    boolean equals(int tokenIndex, String text) {
+        return regionEquals(starts[tokenIndex], lengths[tokenIndex], text);
+    }
+
+    // Return whether or not a token is exactly one specific character.
+    boolean equals(int tokenIndex, char character) {
+        return lengths[tokenIndex] == 1 && chars[starts[tokenIndex]] == character;
+    }
+
+    // Return the position of 'text' inside a token, or -1 if it isn't found.
+    int indexOf(int tokenIndex, String text) {
+        int start = starts[tokenIndex];
+        int textLength = text.length();
+        for (int i = 0, last = lengths[tokenIndex] - textLength; i <= last; ++i) {
+            if (regionEquals(start + i, textLength, text)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Return the position of the last occurrence of a character inside a token,
+    // or -1 if it isn't found.
+    int lastIndexOf(int tokenIndex, char character) {
+        int start = starts[tokenIndex];
+        for (int i = lengths[tokenIndex] - 1; i >= 0; --i) {
+            if (chars[start + i] == character) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Add a character to the token that is currently being built.
+    void append(char character) {
+        if (charCount == chars.length) {
+            chars = Arrays.copyOf(chars, charCount * 2);
+        }
+        chars[charCount++] = character;
+    }
+
+    // Return the length of the token that is currently being built.
+    int pendingLength() {
+        return charCount - pendingStart;
+    }
+
+    // Return a character of the token that is currently being built.
+    char pendingCharAt(int index) {
+        return chars[pendingStart + index];
+    }
+
+    // Return whether or not the token that is currently being built consists of
+    // exactly the given text.
+    boolean pendingEquals(String text) {
+        return regionEquals(pendingStart, charCount - pendingStart, text);
+    }
+
+    // Finish the token that is currently being built and add it to the list.
+    void finishPending() {
+        if (size == starts.length) {
+            starts = Arrays.copyOf(starts, size * 2);
+            lengths = Arrays.copyOf(lengths, size * 2);
+        }
+        starts[size] = pendingStart;
+        lengths[size] = charCount - pendingStart;
+        ++size;
+        pendingStart = charCount;
+    }
+
+    // Throw away the token that is currently being built.
+    void discardPending() {
+        charCount = pendingStart;
+    }
+
+    // Add a token consisting of a single character. There must not be a token
+    // that is currently being built.
+    void add(char character) {
+        append(character);
+        finishPending();
+    }
+
+    // Remove the last finished token. There must not be a token that is
+    // currently being built.
+    void removeLast() {
+        --size;
+        pendingStart = starts[size];
+        charCount = pendingStart;
+    }
+
+    // Remove the last finished token and continue building it. There must not
+    // be a token that is currently being built.
+    void reopenLast() {
+        --size;
+        pendingStart = starts[size];
+    }
+
+    private boolean regionEquals(int start, int length, String text) {
+        if (length != text.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; ++i) {
+            if (chars[start + i] != text.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
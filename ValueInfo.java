@@ -13,6 +13,9 @@ public class ValueInfo {
     protected final String typeName;
     // Whether or not the value is marked as final.
     protected final boolean isFinal;
+    // Class that the type name refers to (ClassInfo.UNRESOLVED if it wasn't
+    // found), filled in when the parser resolves the types of the classes.
+    private ClassInfo resolvedType;
 
     // Creates the object.
     protected ValueInfo(String name, String typeName, boolean isFinal) {
@@ -82,6 +85,18 @@ public class ValueInfo {
         return isFinal;
     }
     
+    // Return the information about the class that the type name refers to, if
+    // it was parsed by the same parser as the class that this value belongs to.
+    // Return null otherwise. The types are resolved when the classes are
+    // obtained from the parser.
+    public ClassInfo getResolvedType() {
+        return resolvedType == ClassInfo.UNRESOLVED ? null : resolvedType;
+    }
+    
+    void setResolvedType(ClassInfo resolvedType) {
+        this.resolvedType = resolvedType;
+    }
+    
     // Convert the information about the value to a SmartText string.
     public SmartText toSmartText() {
         return new SmartText().append(name).append(" : ").append(formatTypeName()).append(formatComment(isFinal ? " (final)" : ""));
@@ -0,0 +1,26 @@
+package javaprojectview.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// Runs all the benchmarks (or the ones matching the regular expression given
+// as the first argument) and reports operations per second together with the
+// allocation rate measured by the GC profiler.
+//
+// The benchmarks are compiled together with the classes and resources of the
+// program and JMH (jmh-core and jmh-generator-annprocess on the annotation
+// processor path). Running the generated benchmarks jar directly with
+// "-prof gc" gives the same results.
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(args.length > 0 ? args[0] : "javaprojectview\\.benchmark\\..*")
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
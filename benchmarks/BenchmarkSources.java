@@ -0,0 +1,103 @@
+package javaprojectview.benchmark;
+
+import java.util.Random;
+
+// Generates Java source code for the benchmarks. The code looks like real
+// source files: it has comments, annotations, strings, generics, nested
+// classes and methods with parameters and local variables. A fixed seed is
+// used so every run parses exactly the same code.
+final class BenchmarkSources {
+
+    private static final String[] TYPES = {
+        "int", "long", "boolean", "String", "double", "List<String>", "Map<String, Integer>", "char[]", "Object"
+    };
+
+    private BenchmarkSources() {
+    }
+
+    // Generate a single source file containing 'numClasses' top level classes
+    // that each have 'membersPerClass' fields and as many methods. Every class
+    // extends or refers to the classes before it, so a diagram of the classes
+    // has relations between them.
+    static String generate(int numClasses, int membersPerClass) {
+        Random random = new Random(42);
+        StringBuilder code = new StringBuilder();
+        code.append("/*\n * Generated source code used to benchmark the parser.\n */\n");
+        code.append("package generated.benchmark;\n\n");
+        code.append("import java.util.ArrayList;\nimport java.util.HashMap;\nimport java.util.List;\nimport java.util.Map;\n\n");
+        for (int i = 0; i < numClasses; ++i) {
+            appendClass(code, random, i, membersPerClass);
+        }
+        return code.toString();
+    }
+
+    private static void appendClass(StringBuilder code, Random random, int index, int membersPerClass) {
+        code.append("// Class number ").append(index).append(".\n");
+        code.append(index % 7 == 0 ? "abstract class " : "class ").append("Generated").append(index);
+        if (index > 0 && index % 3 == 0) {
+            code.append(" extends Generated").append(random.nextInt(index));
+        }
+        if (index % 4 == 1) {
+            code.append(" implements Comparable<Generated").append(index).append(">");
+        }
+        code.append(" {\n\n");
+        for (int i = 0; i < membersPerClass; ++i) {
+            String type = index > 0 && i % 5 == 0 ? "Generated" + random.nextInt(index) : TYPES[random.nextInt(TYPES.length)];
+            code.append("    // Field number ").append(i).append(".\n");
+            code.append(i % 3 == 0 ? "    private " : "    protected ").append(i % 4 == 0 ? "static final " : "");
+            code.append(type).append(" field").append(i);
+            if (i % 4 == 0) {
+                code.append(" = ").append(initializer(type, i));
+            }
+            code.append(";\n");
+        }
+        code.append('\n');
+        for (int i = 0; i < membersPerClass; ++i) {
+            String returnType = i % 3 == 0 ? "void" : TYPES[random.nextInt(TYPES.length)];
+            code.append("    @SuppressWarnings(\"unchecked\")\n");
+            code.append("    public ").append(returnType).append(" method").append(i).append('(');
+            int numParameters = random.nextInt(4);
+            for (int p = 0; p < numParameters; ++p) {
+                code.append(p == 0 ? "" : ", ").append(p == 1 ? "final " : "").append(TYPES[random.nextInt(TYPES.length)]).append(" parameter").append(p);
+            }
+            code.append(") {\n");
+            code.append("        ArrayList<String> names = new ArrayList<>();\n");
+            code.append("        for (int i = 0; i < ").append(i + 1).append("; ++i) {\n");
+            code.append("            String name = \"name {\" + i + \"};\";\n");
+            code.append("            names.add(name);\n");
+            code.append("        }\n");
+            code.append("        HashMap<String, Integer> counts = new HashMap<>();\n");
+            code.append("        if (names.isEmpty()) {\n");
+            code.append("            counts.put(\"empty\", 0);\n");
+            code.append("        }\n");
+            if (!returnType.equals("void")) {
+                code.append("        return ").append(initializer(returnType, i)).append(";\n");
+            }
+            code.append("    }\n\n");
+        }
+        code.append("    static class Inner").append(index).append(" {\n");
+        code.append("        private final int value;\n\n");
+        code.append("        Inner").append(index).append("(int value) {\n");
+        code.append("            this.value = value;\n");
+        code.append("        }\n");
+        code.append("    }\n");
+        code.append("}\n\n");
+    }
+
+    private static String initializer(String type, int seed) {
+        switch (type) {
+            case "int":
+            case "long":
+            case "double":
+                return Integer.toString(seed);
+            case "boolean":
+                return "false";
+            case "String":
+                return "\"value " + seed + "\"";
+            case "char[]":
+                return "new char[] {'a', '}'}";
+            default:
+                return "null";
+        }
+    }
+}
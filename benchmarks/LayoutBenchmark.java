@@ -0,0 +1,89 @@
+package javaprojectview.benchmark;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import javaprojectview.graphics.PositionedImage;
+import javaprojectview.parser.JavaParser;
+import javaprojectview.uml.JavaClassDiagram;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+// Positioning the panels of a diagram, and finding the points where the
+// relations between them connect to the panels.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class LayoutBenchmark {
+
+    private static final int NUM_RECTANGLES = 1024;
+
+    // Number of panels in the diagram. Every class has 10 fields and 10
+    // methods, and the classes refer to each other.
+    @Param({"50", "200", "2000", "5000"})
+    public int numClasses;
+
+    private JavaClassDiagram diagram;
+    private Rectangle[] rectangles;
+    private PositionedImage[] images;
+
+    @Setup
+    public void setup() {
+        JavaParser parser = new JavaParser();
+        parser.parseSourceCode(BenchmarkSources.generate(numClasses, 10));
+        diagram = new JavaClassDiagram(parser.getClasses());
+        // Rectangles of panel-like sizes spread over a large area.
+        Random random = new Random(42);
+        rectangles = new Rectangle[NUM_RECTANGLES];
+        images = new PositionedImage[NUM_RECTANGLES];
+        for (int i = 0; i < NUM_RECTANGLES; ++i) {
+            int width = 100 + random.nextInt(300);
+            int height = 50 + random.nextInt(500);
+            int x = random.nextInt(20000);
+            int y = random.nextInt(20000);
+            rectangles[i] = new Rectangle(x - width / 2, y - height / 2, width, height);
+            images[i] = new PositionedImage(null, x, y);
+            images[i].width = width;
+            images[i].height = height;
+        }
+    }
+
+    @Benchmark
+    public JavaClassDiagram separateBoxes() {
+        diagram.separateBoxes();
+        return diagram;
+    }
+
+    // Connection points between every rectangle and the next one.
+    @Benchmark
+    public void getConnectionPoints(Blackhole blackhole) {
+        for (int i = 0; i < NUM_RECTANGLES; ++i) {
+            Point point = PositionedImage.getConnectionPoint(rectangles[i], rectangles[(i + 1) % NUM_RECTANGLES]);
+            blackhole.consume(point);
+        }
+    }
+
+    // Same as getConnectionPoints, but starting from the panel positions the
+    // way the diagram does.
+    @Benchmark
+    public void getImageConnectionPoints(Blackhole blackhole) {
+        for (int i = 0; i < NUM_RECTANGLES; ++i) {
+            Point point = images[i].getConnectionPoint(images[(i + 1) % NUM_RECTANGLES]);
+            blackhole.consume(point);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package javaprojectview.benchmark;
+
+import java.awt.Font;
+import java.awt.Image;
+import java.util.concurrent.TimeUnit;
+import javaprojectview.graphics.ClassInfoPainter;
+import javaprojectview.graphics.SmartTextPart;
+import javaprojectview.parser.ClassInfo;
+import javaprojectview.parser.FieldInfo;
+import javaprojectview.parser.JavaParser;
+import javaprojectview.parser.MethodInfo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Painting the images of text parts and of complete class info panels, at
+// small, normal and large font sizes.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class PainterBenchmark {
+
+    @Param({"6", "12", "24"})
+    public float fontSize;
+
+    private SmartTextPart textPart;
+    private SmartTextPart underlinedTextPart;
+    private ClassInfoPainter classPainter;
+
+    @Setup
+    public void setup() {
+        textPart = new SmartTextPart("processEntries(Map<String, List<Integer>> entries, boolean recursive) : void", Font.BOLD, "method-name");
+        underlinedTextPart = new SmartTextPart("INSTANCE : Generated", "field-name", true);
+        // A class with 200 fields and 200 methods.
+        JavaParser parser = new JavaParser();
+        parser.parseSourceCode(BenchmarkSources.generate(1, 200));
+        ClassInfo classInfo = parser.getClassInfo("generated.benchmark.Generated0");
+        classPainter = new ClassInfoPainter(classInfo.getSmartTextName());
+        for (FieldInfo info : classInfo.getFields()) {
+            classPainter.add(info);
+        }
+        for (MethodInfo info : classInfo.getMethods()) {
+            classPainter.add(info);
+        }
+    }
+
+    @Benchmark
+    public Image paintTextPart() {
+        return textPart.paintImage(fontSize);
+    }
+
+    @Benchmark
+    public Image paintUnderlinedTextPart() {
+        return underlinedTextPart.paintImage(fontSize);
+    }
+
+    @Benchmark
+    public Image paintClassInfo() {
+        return classPainter.paintImage(fontSize);
+    }
+}
@@ -0,0 +1,73 @@
+package javaprojectview.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import javaprojectview.parser.Accessibility;
+import javaprojectview.parser.ClassInfo;
+import javaprojectview.parser.JavaParser;
+import javaprojectview.parser.ParseListener;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Parsing large source files. 'streamSourceCode' measures only the tokenizer
+// and the statement parser, 'parseSourceCode' also builds and resolves the
+// classes.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class ParserBenchmark {
+
+    // Number of classes in the source file; every class has 50 fields and 50
+    // methods.
+    @Param({"10", "100"})
+    public int numClasses;
+
+    private String sourceCode;
+
+    @Setup
+    public void setup() {
+        sourceCode = BenchmarkSources.generate(numClasses, 50);
+    }
+
+    @Benchmark
+    public ClassInfo[] parseSourceCode() {
+        JavaParser parser = new JavaParser();
+        parser.parseSourceCode(sourceCode);
+        return parser.getClasses();
+    }
+
+    @Benchmark
+    public int streamSourceCode() {
+        MemberCounter counter = new MemberCounter();
+        JavaParser.streamSourceCode(sourceCode, counter);
+        return counter.numMembers;
+    }
+
+    // Listener that only counts members, so the parse result can't be
+    // optimized away.
+    private static class MemberCounter implements ParseListener {
+
+        private int numMembers;
+
+        @Override
+        public void field(Accessibility accessibility, String name, String typeName, boolean isFinal, boolean isStatic) {
+            ++numMembers;
+        }
+
+        @Override
+        public void startMethod(Accessibility accessibility, String name, String returnTypeName, boolean isFinal, boolean isStatic) {
+            ++numMembers;
+        }
+    }
+}
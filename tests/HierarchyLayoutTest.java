@@ -0,0 +1,77 @@
+package javaprojectview.uml;
+
+import java.awt.Rectangle;
+import javaprojectview.graphics.PositionedImage;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+// Tests for the layered hierarchy layout.
+public class HierarchyLayoutTest {
+
+    private static final int SPACING = 10;
+
+    // A class with hundreds of sub types must not be laid out as a single
+    // layer that is far wider than the diagram is high.
+    @Test
+    public void wideShallowTreeIsSplitIntoRows() {
+        int numSubTypes = 500;
+        PositionedImage[] images = createImages(numSubTypes + 1, 100, 60);
+        int[][] superTypes = new int[images.length][];
+        superTypes[0] = new int[0];
+        for (int i = 1; i < images.length; ++i) {
+            superTypes[i] = new int[] {0};
+        }
+        new HierarchyLayout(images, superTypes, SPACING).arrange();
+        Rectangle bounds = getBounds(images);
+        double aspectRatio = (double) bounds.width / bounds.height;
+        assertTrue("aspect ratio " + aspectRatio, aspectRatio <= 3.0 && aspectRatio >= 1.0 / 3.0);
+        // The sub types are still below their super type.
+        for (int i = 1; i < images.length; ++i) {
+            assertTrue(getBounds(images[i]).y >= getBounds(images[0]).y + images[0].height);
+        }
+        assertNoOverlap(images);
+    }
+
+    // Narrow layers are not split.
+    @Test
+    public void narrowLayersStayInOneRow() {
+        PositionedImage[] images = createImages(4, 100, 60);
+        int[][] superTypes = {{}, {0}, {0}, {0}};
+        new HierarchyLayout(images, superTypes, SPACING).arrange();
+        for (int i = 2; i < images.length; ++i) {
+            assertTrue(images[i].y == images[1].y);
+        }
+        assertNoOverlap(images);
+    }
+
+    private static PositionedImage[] createImages(int count, int width, int height) {
+        PositionedImage[] images = new PositionedImage[count];
+        for (int i = 0; i < count; ++i) {
+            images[i] = new PositionedImage();
+            images[i].width = width;
+            images[i].height = height;
+        }
+        return images;
+    }
+
+    private static Rectangle getBounds(PositionedImage image) {
+        return new Rectangle(image.x - image.width / 2, image.y - image.height / 2, image.width, image.height);
+    }
+
+    private static Rectangle getBounds(PositionedImage[] images) {
+        Rectangle bounds = getBounds(images[0]);
+        for (PositionedImage image : images) {
+            bounds.add(getBounds(image));
+        }
+        return bounds;
+    }
+
+    private static void assertNoOverlap(PositionedImage[] images) {
+        for (int i = 0; i < images.length; ++i) {
+            for (int j = i + 1; j < images.length; ++j) {
+                assertFalse(getBounds(images[i]).intersects(getBounds(images[j])));
+            }
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package javaprojectview.graphics;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+// Tests for the points where relations connect to panels.
+//
+// The tests are compiled together with the classes and resources of the
+// program and JUnit 4, like the benchmarks are compiled with JMH.
+public class PositionedImageTest {
+
+    // Zero-size panels at negative coordinates (which the force-directed
+    // layout creates) must still get a connection point on their bounds, in
+    // every direction.
+    @Test
+    public void connectionPointOfEmptyPanelAtNegativeCoordinates() {
+        Rectangle bounds = new Rectangle(-1234, -567, 0, 0);
+        for (int targetX = -2000; targetX <= 2000; targetX += 250) {
+            for (int targetY = -2000; targetY <= 2000; targetY += 250) {
+                Rectangle targetBounds = new Rectangle(targetX, targetY, 0, 0);
+                Point point = PositionedImage.getConnectionPoint(bounds, targetBounds);
+                assertNotNull(point);
+                assertTrue(bounds.x <= point.x && point.x <= bounds.x + bounds.width);
+                assertTrue(bounds.y <= point.y && point.y <= bounds.y + bounds.height);
+            }
+        }
+    }
+
+    // The connection point lies on the edge of a panel at negative
+    // coordinates.
+    @Test
+    public void connectionPointOfPanelAtNegativeCoordinates() {
+        Rectangle bounds = new Rectangle(-301, -99, 37, 21);
+        for (int targetX = -2000; targetX <= 2000; targetX += 125) {
+            for (int targetY = -2000; targetY <= 2000; targetY += 125) {
+                Rectangle targetBounds = new Rectangle(targetX, targetY, 10, 10);
+                Point point = PositionedImage.getConnectionPoint(bounds, targetBounds);
+                assertNotNull(point);
+                assertTrue(bounds.x <= point.x && point.x <= bounds.x + bounds.width);
+                assertTrue(bounds.y <= point.y && point.y <= bounds.y + bounds.height);
+            }
+        }
+    }
+}